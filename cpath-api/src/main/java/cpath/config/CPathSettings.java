@@ -102,12 +102,27 @@ public final class CPathSettings {
 	 * cpath2 Metadata configuration default file name.
 	 */
 	public static final String METADATA_FILE = "metadata.conf";
+
+	/**
+	 * Search queries (one per line) to warm up the full-text index searcher with.
+	 */
+	public static final String WARMUP_FILE = "warmup.txt";
 	
 	/**
 	 * Common prefix for cPath2 generated BioPAX comments
 	 */
 	public static final String CPATH2_GENERATED_COMMENT = "cPath2-generated";
 
+	/**
+	 * Default max. time (ms) to collect the hits of a search query.
+	 */
+	public static final long DEFAULT_SEARCH_TIME_LIMIT_MS = 3000L;
+
+	/**
+	 * Default max. number of idle graph query workspaces kept per query graph.
+	 */
+	public static final int DEFAULT_QUERY_WORKSPACES = 2;
+
 	
 	/* System / Environment property names used by cPath2
 	 * (loaded by Spring property placeholder from the cpath2.properties,
@@ -121,8 +136,17 @@ public final class CPathSettings {
 	public static final String PROP_ADMIN_ENABLED = "cpath2.admin.enabled";
 	public static final String PROP_XML_BASE="cpath2.xml.base";	
 	public static final String PROP_MAX_SEARCH_HITS_PER_PAGE = "cpath2.maxSearchHitsPerPage";
+	public static final String PROP_SEARCH_TIME_LIMIT = "cpath2.search.timeLimitMs";
+	public static final String PROP_SEARCH_LIST_BY_SIZE = "cpath2.search.listBySize";
+	public static final String PROP_SEARCH_CACHE_SIZE = "cpath2.search.cacheSize";
+	public static final String PROP_CACHE_SIZE_MB = "cpath2.cache.sizeMb";
+	public static final String PROP_QUERY_WORKSPACES = "cpath2.query.workspaces";
 	public static final String PROP_DEBUG_ENABLED = "cpath2.debug.enabled";
 	public static final String PROP_METADATA_LOCATION = "cpath2.metadata.location";
+	public static final String PROP_INDEX_THREADS = "cpath2.index.threads";
+	public static final String PROP_INDEX_RAM_BUFFER_MB = "cpath2.index.ramBufferSizeMB";
+	public static final String PROP_WARMUP_ENABLED = "cpath2.search.warmup.enabled";
+	public static final String PROP_WARMUP_PRELOAD = "cpath2.search.warmup.preload";
 	
 	public static final String PROVIDER_NAME = "cpath2.provider.name";
 	public static final String PROVIDER_DESCRIPTION = "cpath2.provider.description";
@@ -161,9 +185,18 @@ public final class CPathSettings {
 		defaults.put(PROVIDER_DESCRIPTION, "Pathway Commons Team");
 		defaults.put(PROVIDER_ORGANISMS, "Homo sapiens (9606)");
 		defaults.put(PROP_MAX_SEARCH_HITS_PER_PAGE, "500");
+		defaults.put(PROP_SEARCH_TIME_LIMIT, Long.toString(DEFAULT_SEARCH_TIME_LIMIT_MS));
+		defaults.put(PROP_SEARCH_LIST_BY_SIZE, "false");
+		defaults.put(PROP_SEARCH_CACHE_SIZE, "1000");
+		defaults.put(PROP_CACHE_SIZE_MB, "1024");
+		defaults.put(PROP_QUERY_WORKSPACES, Integer.toString(DEFAULT_QUERY_WORKSPACES));
 		defaults.put(PROP_METADATA_LOCATION, homeDir() + File.separator + METADATA_FILE);
 		defaults.put(PROP_DEBUG_ENABLED, "false");
 		defaults.put(PROP_ADMIN_ENABLED, "false");
+		defaults.put(PROP_INDEX_THREADS, Integer.toString(Runtime.getRuntime().availableProcessors()));
+		defaults.put(PROP_INDEX_RAM_BUFFER_MB, "256");
+		defaults.put(PROP_WARMUP_ENABLED, "true");
+		defaults.put(PROP_WARMUP_PRELOAD, "false");
 		//PROP_LOG_START and PROP_LOG_END are null - queries will use current-year, current dates
 
 		settings = new Properties(defaults);
@@ -344,6 +377,117 @@ public final class CPathSettings {
 	}
 
 
+	/**
+	 * Max. time (milliseconds) to spend collecting the hits of a search query;
+	 * when the time is over, the hits found so far are returned (partial results).
+	 * Zero or negative value means no limit.
+	 * 
+	 * @return
+	 */
+	public long getSearchTimeLimit() {
+		return Long.parseLong(property(PROP_SEARCH_TIME_LIMIT));
+	}
+
+	public void setSearchTimeLimit(long millis) {
+		setCPathProperty(PROP_SEARCH_TIME_LIMIT, Long.toString(millis));
+	}
+
+
+	/**
+	 * Whether to list (q="*") search hits by size, i.e., the number of
+	 * processes in a pathway or interaction, largest first (otherwise - in the index order).
+	 * 
+	 * @return
+	 */
+	public boolean isSearchListBySize() {
+		return "true".equalsIgnoreCase(property(PROP_SEARCH_LIST_BY_SIZE));
+	}
+
+	public void setSearchListBySize(boolean bySize) {
+		setCPathProperty(PROP_SEARCH_LIST_BY_SIZE, Boolean.toString(bySize));
+	}
+
+
+	/**
+	 * Max. number of search responses (pages of hits) to keep
+	 * in the memory cache (applied on the service start).
+	 * Zero or negative value disables the cache.
+	 * 
+	 * @return
+	 */
+	public int getSearchCacheSize() {
+		return Integer.parseInt(property(PROP_SEARCH_CACHE_SIZE));
+	}
+
+	public void setSearchCacheSize(int size) {
+		setCPathProperty(PROP_SEARCH_CACHE_SIZE, Integer.toString(size));
+	}
+
+
+	/**
+	 * Max. total size (megabytes) of the graph query result files 
+	 * kept in the cache directory (see {@link #cacheDir()}).
+	 * Zero or negative value disables the cache.
+	 * 
+	 * @return
+	 */
+	public long getCacheSizeMB() {
+		return Long.parseLong(property(PROP_CACHE_SIZE_MB));
+	}
+
+	public void setCacheSizeMB(long megabytes) {
+		setCPathProperty(PROP_CACHE_SIZE_MB, Long.toString(megabytes));
+	}
+
+
+	/**
+	 * Max. number of idle working memories (each - about 14 int arrays 
+	 * of the graph size) that each of the two shared query graphs keeps 
+	 * for the next graph queries (applied on the service start);
+	 * more concurrent queries allocate and then drop their own.
+	 * Zero - do not keep any.
+	 * 
+	 * @return
+	 */
+	public int getQueryWorkspaces() {
+		return Integer.parseInt(property(PROP_QUERY_WORKSPACES));
+	}
+
+	public void setQueryWorkspaces(int workspaces) {
+		setCPathProperty(PROP_QUERY_WORKSPACES, Integer.toString(workspaces));
+	}
+
+
+	/**
+	 * Number of threads to use to build the full-text index
+	 * (default: no. available processors).
+	 * 
+	 * @return
+	 */
+	public int getIndexThreads() {
+		return Integer.parseInt(property(PROP_INDEX_THREADS));
+	}
+
+	public void setIndexThreads(int indexThreads) {
+		setCPathProperty(PROP_INDEX_THREADS, Integer.toString(indexThreads));
+	}
+
+
+	/**
+	 * The full-text index writer's RAM buffer size, Mb 
+	 * (more memory - fewer index segments to merge).
+	 * 
+	 * @return
+	 */
+	public double getIndexRamBufferSizeMB() {
+		return Double.parseDouble(property(PROP_INDEX_RAM_BUFFER_MB));
+	}
+
+	public void setIndexRamBufferSizeMB(double ramBufferSizeMB) {
+		setCPathProperty(PROP_INDEX_RAM_BUFFER_MB, Double.toString(ramBufferSizeMB));
+	}
+
+
 	/**
 	 * This cPath2 instance's xml:base 
 	 * (cpath2 service should use a cpath2 db
@@ -465,6 +609,50 @@ public final class CPathSettings {
 	}
 
 
+	/**
+	 * Gets the full path to the (optional) file of 
+	 * representative search queries, one per line,
+	 * used to warm up the index searcher.
+	 * 
+	 * @return
+	 */
+	public String warmupFile() {
+		return homeDir() + File.separator + WARMUP_FILE;
+	}
+
+
+	/**
+	 * Whether to run some search queries (see {@link #warmupFile()}) 
+	 * with a new full-text index searcher before the service 
+	 * starts answering queries (and after the index is replaced).
+	 * 
+	 * @return
+	 */
+	public boolean isWarmupEnabled() {
+		return "true".equalsIgnoreCase(property(PROP_WARMUP_ENABLED));
+	}
+
+	public void setWarmupEnabled(boolean enabled) {
+		setCPathProperty(PROP_WARMUP_ENABLED, Boolean.toString(enabled));
+	}
+
+
+	/**
+	 * Whether to also read all the full-text index files 
+	 * (into the OS page cache) before the warm-up queries run;
+	 * worth it only when there is enough RAM to keep the whole index cached.
+	 * 
+	 * @return
+	 */
+	public boolean isWarmupPreload() {
+		return "true".equalsIgnoreCase(property(PROP_WARMUP_PRELOAD));
+	}
+
+	public void setWarmupPreload(boolean preload) {
+		setCPathProperty(PROP_WARMUP_PRELOAD, Boolean.toString(preload));
+	}
+
+
 	/**
 	 * Gets the full path to the to-be-generated script.
 	 *
@@ -491,6 +679,7 @@ public final class CPathSettings {
 		{	//ok to alter some props in the 'normal' state too
 			if(PROP_DEBUG_ENABLED.equals(name)
 					|| PROP_MAX_SEARCH_HITS_PER_PAGE.equals(name) //always allow
+					|| PROP_SEARCH_TIME_LIMIT.equals(name) //always allow
 					|| PROP_LOG_END.equals(name) //always allow
 					|| PROP_LOG_START.equals(name) //always allow
 			) {
@@ -548,8 +737,9 @@ public final class CPathSettings {
 	
 	
 	/**
-	 * Gets the full path to query cache directory.
-	 * @deprecated
+	 * Gets the full path to query cache directory
+	 * (converted graph query results are stored there).
+	 * 
 	 * @return
 	 */
 	public String cacheDir() {
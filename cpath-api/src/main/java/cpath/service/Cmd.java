@@ -16,7 +16,17 @@ public enum Cmd {
 		"extract the corresponding sub-model to BioPAX or another supported format. ",
 		"/search?q=brca*&organism=9606",
 		"Search Response that lists Search Hits - XML (default) or JSON (when called as '/search.json?')",
-		new CmdArgs[]{q, page, type, organism, datasource, user}),
+		new CmdArgs[]{q, page, cursor, facets, type, organism, datasource, user}),
+	COUNT("Counts BioPAX objects that match the full-text query and filters (same as in the search command), " +
+		"without returning the hits.",
+		"/count?q=*&type=pathway&datasource=reactome",
+		"Search Response with the numHits attribute only - XML (default) or JSON (when called as '/count.json?')",
+		new CmdArgs[]{q, type, organism, datasource, user}),
+	SUGGEST("Type-ahead suggestions: names of BioPAX entities and gene symbols that contain " +
+		"words starting with the query text, most popular first (it does not run the full-text search).",
+		"/suggest?q=insul&max=10",
+		"Suggest Response - XML (default) or JSON (when called as '/suggest.json?')",
+		new CmdArgs[]{q, max}),
 	GET("Gets a BioPAX element or sub-model by ID(s).",
         "/get?uri=http://identifiers.org/uniprot/P38398",
         "BioPAX by default, other formats as specified by the format parameter.",
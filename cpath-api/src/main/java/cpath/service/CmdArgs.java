@@ -10,6 +10,10 @@ public enum CmdArgs {
 	uri("an identifier, usually a BioPAX element URI (default); multiple values per query are supported (array)"),
     q("query string (full-text search)"),
     page("search results page number (>=0)"),
+    cursor("search results cursor - to get the next page after the previous one " +
+    		"(the 'cursor' attribute value of the previous search response); when used, 'page' is ignored"),
+    facets("true or false (default); whether to also count all the search hits by datasource, organism and type"),
+    max("max. number of suggestions to return (default: 10; up to 100)"),
 	type("a BioPAX class name"),
 	kind("graph query type"),
 	format("output format name"),
@@ -0,0 +1,69 @@
+package cpath.service.jaxb;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Number of search hits that have the value
+ * in the field (e.g., datasource, organism, type).
+ *
+ * @author rodche
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "FacetCount")
+public class FacetCount implements Serializable {
+	@XmlAttribute(required = true)
+	private String field;
+	@XmlAttribute(required = true)
+	private String value;
+	@XmlAttribute(required = true)
+	private Integer count;
+
+	public FacetCount() {
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param other
+	 */
+	public FacetCount(FacetCount other) {
+		this(other.field, other.value, other.count);
+	}
+
+	public FacetCount(String field, String value, Integer count) {
+		this.field = field;
+		this.value = value;
+		this.count = count;
+	}
+
+	public String getField() {
+		return field;
+	}
+	public void setField(String field) {
+		this.field = field;
+	}
+
+	public String getValue() {
+		return value;
+	}
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	public Integer getCount() {
+		return count;
+	}
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	@Override
+	public String toString() {
+		return field + ":" + value + "=" + count;
+	}
+}
@@ -45,6 +45,22 @@ public class SearchHit implements Serializable {
     public SearchHit() {
 	}
 
+	/**
+	 * Copy constructor (the lists are copied too).
+	 *
+	 * @param other
+	 */
+	public SearchHit(SearchHit other) {
+		this.uri = other.uri;
+		this.biopaxClass = other.biopaxClass;
+		this.name = other.name;
+		this.dataSource = (other.dataSource != null) ? new ArrayList<String>(other.dataSource) : null;
+		this.organism = (other.organism != null) ? new ArrayList<String>(other.organism) : null;
+		this.pathway = (other.pathway != null) ? new ArrayList<String>(other.pathway) : null;
+		this.excerpt = other.excerpt;
+		this.size = other.size;
+	}
+
     public String getUri() {
         return uri;
     }
@@ -25,12 +25,47 @@ public class SearchResponse extends ServiceResponse {
 
     @XmlAttribute
     private String comment;
-    
+
+    @XmlAttribute
+    private String cursor; //opaque; to get the next page after this one
+
+    @XmlAttribute
+    private Boolean partial; //true when the search was stopped due to the time limit
+
+    private List<FacetCount> facetCount; //optional; no. hits per datasource, organism, type
+
     @XmlTransient
     private Set<String> providers; //pathway data provider standard names (for logging/stats)
 	
 	public SearchResponse() {
 	}
+
+	/**
+	 * Copy constructor: a deep copy (of the hits and facet counts),
+	 * so that changing one does not change the other.
+	 *
+	 * @param other
+	 */
+	public SearchResponse(SearchResponse other) {
+		this.numHits = other.numHits;
+		this.maxHitsPerPage = other.maxHitsPerPage;
+		this.pageNo = other.pageNo;
+		this.comment = other.comment;
+		this.cursor = other.cursor;
+		this.partial = other.partial;
+		if(other.searchHit != null) {
+			this.searchHit = new ArrayList<SearchHit>(other.searchHit.size());
+			for(SearchHit hit : other.searchHit)
+				this.searchHit.add(new SearchHit(hit));
+		}
+		if(other.facetCount != null) {
+			this.facetCount = new ArrayList<FacetCount>(other.facetCount.size());
+			for(FacetCount fc : other.facetCount)
+				this.facetCount.add(new FacetCount(fc));
+		}
+		if(other.providers != null)
+			this.providers = new HashSet<String>(other.providers);
+	}
     
     public String getComment() {
 		return comment;
@@ -51,6 +86,22 @@ public class SearchResponse extends ServiceResponse {
 		this.searchHit = searchHit;
 	}
 
+    /**
+     * Numbers of hits (all pages) per datasource, organism and biopax type,
+     * if requested.
+     * @return
+     */
+    public List<FacetCount> getFacetCount() {
+        if (facetCount == null) {
+        	facetCount = new ArrayList<FacetCount>();
+        }
+        return this.facetCount;
+    }
+
+    public void setFacetCount(List<FacetCount> facetCount) {
+		this.facetCount = facetCount;
+	}
+
     /**
      * The total number of hits
      * @return
@@ -74,6 +125,36 @@ public class SearchResponse extends ServiceResponse {
 			throw new IllegalArgumentException("Negative values are not supported");
 	}
 
+	/**
+	 * Search results cursor (opaque string) that points
+	 * at the last hit on this page; pass it back to the
+	 * server in the next query to get the next page.
+	 *
+	 * @return cursor or null (when there are no hits)
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * Whether the search took too long and was stopped,
+	 * so that these hits (and total no. hits) are not complete
+	 * (only those found within the time limit).
+	 *
+	 * @return true when the results are partial
+	 */
+	public boolean isPartial() {
+		return partial != null && partial;
+	}
+
+	public void setPartial(boolean partial) {
+		this.partial = (partial) ? Boolean.TRUE : null;
+	}
+
 	@Override
 	@XmlTransient
 	public boolean isEmpty() {
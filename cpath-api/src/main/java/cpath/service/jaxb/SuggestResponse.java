@@ -0,0 +1,59 @@
+package cpath.service.jaxb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.*;
+
+/**
+ * Type-ahead suggestions (e.g., gene and pathway names)
+ * that match the text the user has typed so far.
+ *
+ * @author rodche
+ */
+@XmlRootElement(name="suggestResponse")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "SuggestResponse")
+public class SuggestResponse extends ServiceResponse {
+    @XmlAttribute
+    private String q;
+
+    private List<String> suggestion;
+    
+	public SuggestResponse() {
+	}
+    
+	/**
+	 * The text (prefix) the suggestions are for.
+	 * 
+	 * @return
+	 */
+    public String getQ() {
+		return q;
+	}
+	public void setQ(String q) {
+		this.q = q;
+	}
+
+	/**
+	 * Type-ahead suggestions (completions), best first.
+	 * 
+	 * @return
+	 */
+	public List<String> getSuggestion() {
+		if(suggestion == null) {
+			suggestion = new ArrayList<String>();
+		}
+		return suggestion;
+	}
+	public void setSuggestion(List<String> suggestion) {
+		this.suggestion = suggestion;
+	}
+	
+	@Override
+	@XmlTransient
+	public boolean isEmpty() {
+		return getSuggestion().isEmpty();
+	} 
+
+}
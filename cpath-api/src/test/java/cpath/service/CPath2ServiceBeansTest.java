@@ -15,6 +15,7 @@ import org.junit.Test;
 
 import cpath.service.Status;
 import cpath.service.jaxb.SearchResponse;
+import cpath.service.jaxb.SuggestResponse;
 import cpath.service.jaxb.TraverseEntry;
 import cpath.service.jaxb.TraverseResponse;
 
@@ -32,7 +33,7 @@ public class CPath2ServiceBeansTest {
 	@Test
 	public final void testMarshalServiceResponse() throws Exception {
 		JAXBContext jaxbContext = JAXBContext.newInstance(
-			SearchResponse.class, TraverseResponse.class, TraverseEntry.class);
+			SearchResponse.class, TraverseResponse.class, TraverseEntry.class, SuggestResponse.class);
 
 		Marshaller ma = jaxbContext.createMarshaller();
 		ma.setProperty("jaxb.formatted.output", true);
@@ -54,5 +55,14 @@ public class CPath2ServiceBeansTest {
 		assertTrue(out.length()>0);
 //		System.out.println(out);
 		assertTrue(out.contains("traverseResponse"));
+		
+		SuggestResponse sgr = new SuggestResponse();
+		sgr.setQ("insu");
+		sgr.getSuggestion().add("Insulin");
+		writer = new StringWriter();
+		ma.marshal(sgr, writer);
+		out = writer.toString();
+		assertTrue(out.contains("suggestResponse"));
+		assertTrue(out.contains("<suggestion>Insulin</suggestion>"));
 	}
 }
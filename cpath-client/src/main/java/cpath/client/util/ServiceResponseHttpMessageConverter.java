@@ -31,8 +31,8 @@ public class ServiceResponseHttpMessageConverter
         mediaList.add(MediaType.APPLICATION_XML);
         jaxb = new Jaxb2Marshaller();
         jaxb.setClassesToBeBound(Help.class,
-        		SearchResponse.class, SearchHit.class,
-        		TraverseResponse.class, TraverseEntry.class,
+        		SearchResponse.class, SearchHit.class, FacetCount.class,
+        		TraverseResponse.class, TraverseEntry.class, SuggestResponse.class,
         		ServiceResponse.class);
     }
 
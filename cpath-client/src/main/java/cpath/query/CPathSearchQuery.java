@@ -229,6 +229,9 @@ public final class CPathSearchQuery extends BaseCPathQuery<SearchResponse> imple
 			request.put(CmdArgs.page.name(), Arrays.asList(p.toString())); //using 'add' instead of 'put' would be a bug
 			SearchResponse res = client.post(command, request, SearchResponse.class);	 		
 	 		if(res != null && !res.isEmpty()) { //collect hits
+	 			//next time, ask for the page after the last hit (cheaper than by page #), if the server supports it
+	 			if(res.getCursor() != null)
+	 				request.put(CmdArgs.cursor.name(), Arrays.asList(res.getCursor()));
 	 			if(mulRes == null) {
 	 				mulRes = res;
 	 				int totPages = res.numPages();
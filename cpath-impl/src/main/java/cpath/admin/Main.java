@@ -93,9 +93,18 @@ public final class Main {
         }
 
 		if (args[0].equals(Cmd.INDEX.toString())) {
+			String datasource = null;
+			for(int i=1; i < args.length; i++) {
+				if(args[i].toLowerCase().startsWith("--datasource="))
+					datasource = args[i].substring(13);
+				else 
+					LOG.error("Skipped unrecognized argument: " + args[i]);
+			}
 			
-			index();
-			
+			if(datasource == null)
+				index();
+			else
+				index(datasource);
 		}
 		else if (args[0].equals(Cmd.METADATA.toString())) {
 			if (args.length == 1) {
@@ -287,6 +296,31 @@ public final class Main {
 		LOG.info("index: all done.");
  	}
 
+	/**
+	 * Updates the existing BioPAX full-text index - re-indexes only the objects
+	 * associated with the data source, and updates its no. pathways, interactions, 
+	 * physical entities in the main db.
+	 * 
+	 * @param datasource data source identifier (metadata ID)
+	 * @throws IOException
+	 * @throws IllegalStateException when not in maintenance mode
+	 */
+	public static void index(String datasource) throws IOException {
+		if(!cpath.isAdminEnabled())
+			throw new IllegalStateException("Maintenance mode is not enabled.");
+
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+				new String[] { "classpath:META-INF/spring/applicationContext-jpa.xml" });
+		final CPathService service = context.getBean(CPathService.class);
+
+		LOG.info("index: updating " + datasource + "...");
+		service.index(datasource);
+
+		context.close();
+
+		LOG.info("index: all done.");
+	}
+
     /**
      * Performs cpath2 Merge stage.
      * 
@@ -470,9 +504,10 @@ public final class Main {
 				"(organize, clean, convert, normalize input data;" +
 				" create metadata db and create or rebuild the BioPAX utility type objects Warehouse)" + NEWLINE);
 		toReturn.append(Cmd.MERGE.toString() + " (merge all pathway data; overwrites the main biopax model archive)"+ NEWLINE);
-		toReturn.append(Cmd.INDEX.toString() + " (build new full-text index of the main merged BioPAX db;" +
+		toReturn.append(Cmd.INDEX.toString() + " [--datasource=<id>] (build new full-text index of the main merged BioPAX db;" +
 				"create blacklist.txt in the downloads directory; re-calculates the no. pathways, molecules and " +
-        		"interactions per data source)" + NEWLINE);
+        		"interactions per data source; when --datasource is set, only re-index the objects of that " +
+        		"data source in the existing index and update its counts)" + NEWLINE);
 		toReturn.append(Cmd.EXPORT.toString()
 				+ " [filename] [--uris=<uri,uri,..>] [--output-absolute-uris] [--datasources=<nameOrUri,..>] [--types=<interface,..>]" +
 				"(when no arguments provided, it generates the default detailed pathway data and organism-specific " +
@@ -597,16 +632,7 @@ public final class Main {
 	private static Collection<String> findAllUris(Searcher searcher, 
     		Class<? extends BioPAXElement> type, String[] ds, String[] org) 
     {
-    	Collection<String> uris = new ArrayList<String>();
-    	
-    	SearchResponse resp = searcher.search("*", 0, type, ds, org);
-    	int page = 0;
-    	while(!resp.isEmpty()) {
-    		for(SearchHit h : resp.getSearchHit())
-    			uris.add(h.getUri());
-    		//next page
-    		resp = searcher.search("*", ++page, type, ds, org);
-    	}
+    	Collection<String> uris = searcher.findAllUris("*", type, ds, org);
     	
     	LOG.info("findAllUris(in "+type.getSimpleName()+", ds: "+Arrays.toString(ds)+", org: "+Arrays.toString(org)+") "
     			+ "collected " + uris.size());
@@ -64,6 +64,58 @@ public interface CPathService {
 	 */
 	ServiceResponse search(String queryStr,
 			int page, Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms);
+
+	/**
+	 * Full-text search for the BioPAX elements;
+	 * optionally, also counts all the hits by datasource, organism and type.
+	 * 
+	 * @param queryStr
+	 * @param page search results page no.
+	 * @param biopaxClass
+	 * @param dsources URIs of data sources
+	 * @param organisms URIs of organisms
+	 * @param facets whether to add the facet counts to the response
+	 * @return search/error response
+	 */
+	ServiceResponse search(String queryStr, int page, Class<? extends BioPAXElement> biopaxClass, 
+			String[] dsources, String[] organisms, boolean facets);
+
+	/**
+	 * Counts the BioPAX elements that match the full-text query and filters.
+	 * 
+	 * @param queryStr
+	 * @param biopaxClass
+	 * @param dsources URIs of data sources
+	 * @param organisms URIs of organisms
+	 * @return search response with the number of hits only (no hits), or error response
+	 */
+	ServiceResponse count(String queryStr, 
+			Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms);
+
+	/**
+	 * Type-ahead suggestions (names, gene symbols) for the text.
+	 * 
+	 * @param text one or more words; the last one can be incomplete
+	 * @param max max. number of suggestions
+	 * @return suggest response (possibly empty), or error response
+	 */
+	ServiceResponse suggest(String text, int max);
+	
+	/**
+	 * Full-text search for the BioPAX elements - 
+	 * the next hits page after the one the cursor points to.
+	 * 
+	 * @param queryStr
+	 * @param cursor search cursor from the previous page response
+	 * @param biopaxClass
+	 * @param dsources URIs of data sources
+	 * @param organisms URIs of organisms
+	 * @param facets whether to add the facet counts to the response
+	 * @return search/error response
+	 * @see SearchResponse#getCursor()
+	 */
+	ServiceResponse searchAfter(String queryStr, String cursor, Class<? extends BioPAXElement> biopaxClass, 
+			String[] dsources, String[] organisms, boolean facets);
 	
 	/**
 	 * Runs a neighborhood query using the given parameters
@@ -232,6 +284,16 @@ public interface CPathService {
 	 */
 	void index() throws IOException;
 
+	/**
+	 * Updates the existing BioPAX full-text index - only the documents
+	 * associated with the data source (e.g., after its data were re-loaded
+	 * and merged), and updates the counts of BioPAX entities for the data source.
+	 *
+	 * @param datasource data source identifier (metadata ID)
+	 * @throws IllegalArgumentException when there is no such data source
+	 */
+	void index(String datasource) throws IOException;
+
 	/**
 	 * Clears the metadata object and the db record,
 	 * and also drops/creates the data directory.
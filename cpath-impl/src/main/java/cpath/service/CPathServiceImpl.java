@@ -1,11 +1,16 @@
 package cpath.service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringUtils;
 import org.biopax.paxtools.controller.*;
 import org.biopax.paxtools.io.*;
 import org.biopax.paxtools.model.*;
@@ -47,7 +52,7 @@ import static cpath.service.Status.*;
 public class CPathServiceImpl implements CPathService {
 	private static final Logger log = LoggerFactory.getLogger(CPathServiceImpl.class);
 	
-	Searcher searcher;
+	volatile Searcher searcher;
 
 	@Autowired
     MetadataRepository metadataRepository;
@@ -67,6 +72,23 @@ public class CPathServiceImpl implements CPathService {
 	private final Pattern refseqIdPattern = Pattern.compile(MiriamLink.getDatatype("refseq").getPattern());
 
 	private final static CPathSettings cpath = CPathSettings.getInstance();
+	
+	//search responses by the normalized query, bound to the index version (null - disabled)
+	private final LruCache<String, SearchResponse> searchCache = (cpath.getSearchCacheSize() > 0)
+			? new LruCache<String, SearchResponse>(cpath.getSearchCacheSize()) : null;
+	private volatile long searchCacheVersion = -1L;
+	//the search cache stats (hits, misses, etc.) are logged after every so many lookups
+	private static final int SEARCH_CACHE_STATS_INTERVAL = 1000;
+	private final AtomicLong searchCacheLookups = new AtomicLong();
+
+	//converted graph query results (files) by the normalized query; bound to the model
+	private volatile ResultCache graphCache;
+	
+	//identical get/graph queries that run at the same time share the result
+	private final SingleFlight singleFlight = new SingleFlight();
+	
+	//shared (pre-built) paxtools query graphs of the model, with the blacklist applied
+	private volatile QueryGraph queryGraph;
 
 	/**
 	 * Constructor
@@ -83,6 +105,8 @@ public class CPathServiceImpl implements CPathService {
 	 * it is called after the web service is started.
 	 */
 	synchronized public void init() {
+		//the query graph (built after the model) uses the blacklist
+		loadBlacklist();
 		//fork the model loading (which takes quite a while)
 		ExecutorService executor = Executors.newSingleThreadExecutor();
 		executor.execute(
@@ -93,17 +117,53 @@ public class CPathServiceImpl implements CPathService {
 				// set for this service
 				if(paxtoolsModel != null) {
 					paxtoolsModel.setXmlBase(cpath.getXmlBase());
+					//new model - new (empty) graph query results cache
+					graphCache = (cpath.getCacheSizeMB() > 0) 
+						? new ResultCache(new File(cpath.cacheDir()), cpath.getCacheSizeMB() * 1024 * 1024) : null;
 					log.info("Main BioPAX model (in-memory) is now ready for queries.");
-					searcher = new SearchEngine(paxtoolsModel, 
+					SearchEngine searchEngine = new SearchEngine(paxtoolsModel, 
 							cpath.indexDir());
-					((SearchEngine) searcher).setMaxHitsPerPage(
+					searchEngine.setMaxHitsPerPage(
 						Integer.parseInt(cpath.getMaxHitsPerPage()));
+					searchEngine.setSearchTimeLimit(cpath.getSearchTimeLimit());
+					searchEngine.setListingBySize(cpath.isSearchListBySize());
+					if(cpath.isWarmupEnabled()) {
+						log.info("Warming up the full-text index searcher...");
+						searchEngine.setPreload(cpath.isWarmupPreload());
+						searchEngine.warmUp(warmupQueries());
+					}
+					//now ready for search queries
+					searcher = searchEngine;
+					log.info("Full-text search is now ready.");
+					buildQueryGraph();
+					log.info("Shared query graph is now ready.");
 				}
 			}
 		});
 		executor.shutdown();
 		//won't wait (nothing else to do)
-		loadBlacklist();
+	}
+
+	// reads the warm-up search queries (one per line; '#' - comment) or uses the default one
+	private List<String> warmupQueries() {
+		List<String> queries = new ArrayList<String>();
+		File f = new File(cpath.warmupFile());
+		if(f.exists()) {
+			try {
+				for(String line : Files.readAllLines(f.toPath(), StandardCharsets.UTF_8)) {
+					line = line.trim();
+					if(!line.isEmpty() && !line.startsWith("#"))
+						queries.add(line);
+				}
+			} catch (IOException e) {
+				log.error("Failed to read " + f.getPath(), e);
+			}
+		}
+		
+		if(queries.isEmpty())
+			queries.add("*");
+		
+		return queries;
 	}
 
 	public Model getModel() {
@@ -111,6 +171,9 @@ public class CPathServiceImpl implements CPathService {
 	}
 	public void setModel(Model paxtoolsModel) {
 		this.paxtoolsModel = paxtoolsModel;
+		if(graphCache != null)
+			graphCache.clear();
+		buildQueryGraph();
 	}
 	
 	public Searcher getSearcher() {
@@ -118,24 +181,52 @@ public class CPathServiceImpl implements CPathService {
 	}
 	public void setSearcher(Searcher searcher) {
 		this.searcher = searcher;
+		if(searchCache != null)
+			searchCache.clear();
+	}
+
+	// number of search requests served from the cache (for tests; the stats are also logged periodically)
+	long getSearchCacheHits() {
+		return (searchCache != null) ? searchCache.getHits() : 0L;
+	}
+
+	// number of search requests that were not found in the cache
+	long getSearchCacheMisses() {
+		return (searchCache != null) ? searchCache.getMisses() : 0L;
 	}
 	
 	
 	@Override
 	public ServiceResponse search(String queryStr, 
 			int page, Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms) 
+	{
+		return search(queryStr, page, biopaxClass, dsources, organisms, false);
+	}
+
+
+	@Override
+	public ServiceResponse search(String queryStr, int page, Class<? extends BioPAXElement> biopaxClass, 
+			String[] dsources, String[] organisms, boolean facets) 
 	{
 		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 		
 		try {
+			final String key = searchCacheKey(queryStr, "page=" + page, biopaxClass, dsources, organisms, facets);
+			SearchResponse hits = cachedSearchResponse(key);
+			if(hits != null)
+				return hits;
+			
 			// do search
-			SearchResponse hits = searcher.search(queryStr, page, biopaxClass, dsources, organisms);
+			hits = searcher.search(queryStr, page, biopaxClass, dsources, organisms, facets);
 			
 			hits.setComment("Search '" + queryStr  + "' in " + 
 				((biopaxClass == null) ? "all types" : biopaxClass.getSimpleName()) 
 				+ "; ds: " + Arrays.toString(dsources)+ "; org.: " + Arrays.toString(organisms));
 			
+			if(!hits.isPartial()) //do not cache incomplete (timed out) results
+				cacheSearchResponse(key, hits);
+			
 			return hits;
 			
 		} catch (Exception e) {
@@ -145,16 +236,145 @@ public class CPathServiceImpl implements CPathService {
 	}
 
 
+	@Override
+	public ServiceResponse count(String queryStr, 
+			Class<? extends BioPAXElement> biopaxClass, String[] dsources, String[] organisms) 
+	{
+		if(!paxtoolsModelReady() || searcher == null) 
+			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
+		
+		try {
+			SearchResponse res = new SearchResponse();
+			res.setNumHits(searcher.count(queryStr, biopaxClass, dsources, organisms));
+			res.setComment("Count '" + queryStr  + "' in " + 
+				((biopaxClass == null) ? "all types" : biopaxClass.getSimpleName()) 
+				+ "; ds: " + Arrays.toString(dsources)+ "; org.: " + Arrays.toString(organisms));
+			return res;
+		} catch (Exception e) {
+			log.error("count() failed - " + e);
+			return new ErrorResponse(INTERNAL_ERROR, e);
+		}
+	}
+
+
+	@Override
+	public ServiceResponse suggest(String text, int max) {
+		if(searcher == null) 
+			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
+		
+		try {
+			SuggestResponse res = new SuggestResponse();
+			res.setQ(text);
+			res.getSuggestion().addAll(searcher.suggest(text, max));
+			return res;
+		} catch (Exception e) {
+			log.error("suggest() failed - " + e);
+			return new ErrorResponse(INTERNAL_ERROR, e);
+		}
+	}
+
+
+	@Override
+	public ServiceResponse searchAfter(String queryStr, String cursor, Class<? extends BioPAXElement> biopaxClass, 
+			String[] dsources, String[] organisms, boolean facets) 
+	{
+		if(!paxtoolsModelReady() || searcher == null) 
+			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
+		
+		try {
+			final String key = searchCacheKey(queryStr, "cursor=" + cursor, biopaxClass, dsources, organisms, facets);
+			SearchResponse hits = cachedSearchResponse(key);
+			if(hits != null)
+				return hits;
+			
+			// do search
+			hits = searcher.searchAfter(queryStr, cursor, biopaxClass, dsources, organisms, facets);
+			
+			hits.setComment("Search '" + queryStr  + "' in " + 
+				((biopaxClass == null) ? "all types" : biopaxClass.getSimpleName()) 
+				+ "; ds: " + Arrays.toString(dsources)+ "; org.: " + Arrays.toString(organisms));
+			
+			if(!hits.isPartial()) //do not cache incomplete (timed out) results
+				cacheSearchResponse(key, hits);
+			
+			return hits;
+			
+		} catch (IllegalArgumentException e) {
+			log.error("searchAfter() failed - " + e);
+			return new ErrorResponse(BAD_REQUEST, e.getMessage());
+		} catch (Exception e) {
+			log.error("searchAfter() failed - " + e);
+			return new ErrorResponse(INTERNAL_ERROR, e);
+		}
+	}
+
+
+	/*
+	 * Normalized search request key, which also includes the current index version;
+	 * when the index changes (re-built or refreshed), old entries are removed.
+	 * Returns null when the cache is disabled or there is no query.
+	 */
+	private String searchCacheKey(String queryStr, String page, Class<? extends BioPAXElement> biopaxClass, 
+			String[] dsources, String[] organisms, boolean facets) 
+	{
+		if(searchCache == null || queryStr == null)
+			return null;
+		
+		final long version = searcher.getIndexVersion();
+		if(version != searchCacheVersion) {
+			synchronized (searchCache) {
+				if(version != searchCacheVersion) {
+					log.info("Index version has changed; clearing the search cache (" + searchCache + ")");
+					searchCache.clear();
+					searchCacheVersion = version;
+				}
+			}
+		}
+		
+		return version + "|" + queryStr.trim() + "|" + page 
+			+ "|" + ((biopaxClass == null) ? "" : biopaxClass.getSimpleName())
+			+ "|" + SearchEngine.normalizedValues(dsources) + "|" + SearchEngine.normalizedValues(organisms) 
+			+ "|" + facets;
+	}
+	
+	// a copy of the cached response (callers may modify it), or null
+	private SearchResponse cachedSearchResponse(String key) {
+		if(key == null)
+			return null;
+		
+		SearchResponse res = searchCache.get(key);
+		if(searchCacheLookups.incrementAndGet() % SEARCH_CACHE_STATS_INTERVAL == 0)
+			log.info("Search cache stats - " + searchCache);
+		return (res != null) ? new SearchResponse(res) : null;
+	}
+	
+	private void cacheSearchResponse(String key, SearchResponse res) {
+		if(key != null)
+			searchCache.put(key, new SearchResponse(res));
+	}
+	
+
+
 	@Override
 	public ServiceResponse fetch(final OutputFormat format, final String... uris) {
 		if (uris.length == 0)
 			return new ErrorResponse(NO_RESULTS_FOUND,
 					"No URIs were specified for the query");
 		
-		if(!paxtoolsModelReady()) 
+		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 		
-		// extract/convert a sub-model
+		//concurrent identical requests share the result
+		return singleFlight.execute("get|" + format + "|" + sortedValues(uris), new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() {
+				return extract(format, uris);
+			}
+		});
+	}
+
+	// extracts and converts a sub-model
+	private ServiceResponse extract(OutputFormat format, String[] uris) {
 		try {
 			final String[] mappedUris = findUrisByIds(uris);
 			Set<BioPAXElement> elements = urisToBpes(paxtoolsModel, mappedUris);
@@ -197,20 +417,47 @@ public class CPathServiceImpl implements CPathService {
 		return filters.toArray(new Filter[]{});
 	}
 
+
+	// (re-)builds the shared query graph for the current model and blacklist
+	private void buildQueryGraph() {
+		final Model model = paxtoolsModel;
+		queryGraph = (model != null) ? QueryGraph.build(model, blacklist, cpath.getQueryWorkspaces()) : null;
+	}
+
 	
 	@Override
 	public ServiceResponse getNeighborhood(final OutputFormat format, 
-		final String[] sources, Integer limit, Direction direction, 
+		final String[] sources, final Integer limit, Direction direction, 
 		final String[] organisms, final String[] datasources)
 	{
-		if(!paxtoolsModelReady()) 
+		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 		
-		final String[] src = findUrisByIds(sources);
-
 		if(direction == null) {
 			direction = Direction.UNDIRECTED;
 		}
+		
+		final String key = graphCacheKey(GraphType.NEIGHBORHOOD, format, sources, null, 
+				limit, direction, organisms, datasources);
+		ServiceResponse cached = cachedGraphResult(key);
+		if(cached != null)
+			return cached;
+		
+		final Direction dir = direction;
+		//concurrent identical requests share the result
+		return singleFlight.execute(key, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() {
+				return neighborhood(key, format, sources, limit, dir, organisms, datasources);
+			}
+		});
+	}
+
+	// runs the query (not cached), converts and caches the result
+	private ServiceResponse neighborhood(String key, OutputFormat format, String[] sources, Integer limit, Direction direction, 
+			String[] organisms, String[] datasources)
+	{
+		final String[] src = findUrisByIds(sources);
 
 		// execute the paxtools graph query
 		try {
@@ -222,8 +469,11 @@ public class CPathServiceImpl implements CPathService {
 			}
 
 			// Execute the query, get result elements
-			elements = QueryExecuter.runNeighborhood(elements, paxtoolsModel,
-					limit, direction, createFilters(organisms, datasources));
+			final QueryGraph graph = queryGraph; //null until it's built
+			elements = (graph != null) 
+				? graph.runNeighborhood(elements, limit, direction, organisms, datasources)
+					: QueryExecuter.runNeighborhood(elements, paxtoolsModel,
+						limit, direction, createFilters(organisms, datasources));
 
 			if(elements != null && !elements.isEmpty()) {
 				// auto-complete (gets a reasonable size sub-model)
@@ -231,7 +481,7 @@ public class CPathServiceImpl implements CPathService {
 				Cloner cloner = new Cloner(this.simpleIO.getEditorMap(), this.simpleIO.getFactory());
 				Model m = cloner.clone(paxtoolsModel, elements);
 				m.setXmlBase(paxtoolsModel.getXmlBase());
-				return convert(m, format);
+				return cacheGraphResult(key, convert(m, format));
 			} else {
 				return new ErrorResponse(NO_RESULTS_FOUND,
 						"No results found by URI(s): " + Arrays.toString(src));
@@ -248,9 +498,28 @@ public class CPathServiceImpl implements CPathService {
 			final String[] sources, final Integer limit, 
 			final String[] organisms, final String[] datasources)
 	{	
-		if(!paxtoolsModelReady()) 
+		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 		
+		final String key = graphCacheKey(GraphType.PATHSBETWEEN, format, sources, null, 
+				limit, null, organisms, datasources);
+		ServiceResponse cached = cachedGraphResult(key);
+		if(cached != null)
+			return cached;
+		
+		//concurrent identical requests share the result
+		return singleFlight.execute(key, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() {
+				return pathsBetween(key, format, sources, limit, organisms, datasources);
+			}
+		});
+	}
+
+	// runs the query (not cached), converts and caches the result
+	private ServiceResponse pathsBetween(String key, OutputFormat format, String[] sources, Integer limit, 
+			String[] organisms, String[] datasources)
+	{
 		final String[] src = findUrisByIds(sources);
 		
 		// execute the paxtools graph query
@@ -263,8 +532,11 @@ public class CPathServiceImpl implements CPathService {
 			}
 
 			// Execute the query, get result elements
-			elements = QueryExecuter.runPathsBetween(elements, paxtoolsModel, limit,
-					createFilters(organisms, datasources));
+			final QueryGraph graph = queryGraph; //null until it's built
+			elements = (graph != null) 
+				? graph.runPathsBetween(elements, limit, organisms, datasources)
+					: QueryExecuter.runPathsBetween(elements, paxtoolsModel, limit,
+						createFilters(organisms, datasources));
 
 			// auto-complete (gets a reasonable size sub-model)
 			if(elements != null) {
@@ -272,7 +544,7 @@ public class CPathServiceImpl implements CPathService {
 				Cloner cloner = new Cloner(this.simpleIO.getEditorMap(), this.simpleIO.getFactory());
 				Model m = cloner.clone(paxtoolsModel, elements);
 				m.setXmlBase(paxtoolsModel.getXmlBase());
-				return convert(m, format);
+				return cacheGraphResult(key, convert(m, format));
 			} else {
 				return new ErrorResponse(NO_RESULTS_FOUND,
 						"No results found by URI(s): " + Arrays.toString(src));
@@ -289,9 +561,28 @@ public class CPathServiceImpl implements CPathService {
 		final String[] sources, final String[] targets, final Integer limit,
 		final String[] organisms, final String[] datasources)
 	{
-		if(!paxtoolsModelReady()) 
+		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try later)...");
 		
+		final String key = graphCacheKey(GraphType.PATHSFROMTO, format, sources, targets, 
+				limit, null, organisms, datasources);
+		ServiceResponse cached = cachedGraphResult(key);
+		if(cached != null)
+			return cached;
+		
+		//concurrent identical requests share the result
+		return singleFlight.execute(key, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() {
+				return pathsFromTo(key, format, sources, targets, limit, organisms, datasources);
+			}
+		});
+	}
+
+	// runs the query (not cached), converts and caches the result
+	private ServiceResponse pathsFromTo(String key, OutputFormat format, String[] sources, String[] targets, Integer limit, 
+			String[] organisms, String[] datasources)
+	{
 		final String[] src = findUrisByIds(sources);
 		final String[] tgt = findUrisByIds(targets);
 		
@@ -310,7 +601,14 @@ public class CPathServiceImpl implements CPathService {
 			}
 
 			// Execute the query
-			Set<BioPAXElement> elements = (target==null || target.isEmpty()) 
+			final QueryGraph graph = queryGraph; //null until it's built
+			Set<BioPAXElement> elements;
+			if(graph != null)
+				elements = (target==null || target.isEmpty()) 
+					? graph.runPathsBetween(source, limit, organisms, datasources)
+						: graph.runPathsFromTo(source, target, limit, organisms, datasources);
+			else
+				elements = (target==null || target.isEmpty()) 
 					? QueryExecuter.runPathsBetween(source, paxtoolsModel, limit,
 							createFilters(organisms, datasources))
 							: QueryExecuter.runPathsFromTo(source, target, 
@@ -323,7 +621,7 @@ public class CPathServiceImpl implements CPathService {
 						Cloner cloner = new Cloner(this.simpleIO.getEditorMap(), this.simpleIO.getFactory());
 						Model m = cloner.clone(paxtoolsModel, elements);
 						m.setXmlBase(paxtoolsModel.getXmlBase());
-						return convert(m, format);
+						return cacheGraphResult(key, convert(m, format));
 					} else {
 						return new ErrorResponse(NO_RESULTS_FOUND,
 								"No results found; source: " + Arrays.toString(src)
@@ -349,22 +647,90 @@ public class CPathServiceImpl implements CPathService {
 	}
 
 
+	/*
+	 * Normalized graph query key (the order of source/target URIs or IDs does not matter;
+	 * IDs are case-insensitive, URIs are not); bound to the index version,
+	 * for the IDs are mapped to URIs using the index, which can be updated or replaced.
+	 */
+	private String graphCacheKey(GraphType kind, OutputFormat format, String[] sources, String[] targets, 
+			Integer limit, Direction direction, String[] organisms, String[] datasources) 
+	{
+		final Searcher s = searcher;
+		return ((s != null) ? s.getIndexVersion() : -1L) 
+			+ "|" + kind + "|" + format + "|" + sortedValues(sources) + "|" + sortedValues(targets) 
+			+ "|" + limit + "|" + direction + "|" + SearchEngine.normalizedValues(organisms) 
+			+ "|" + SearchEngine.normalizedValues(datasources);
+	}
+
+	// sorted unique URIs or IDs (in lower case, like the id resolver does; see findUrisByIds)
+	private static String sortedValues(String[] values) {
+		if(values == null || values.length == 0)
+			return "";
+		Set<String> set = new TreeSet<String>();
+		for(String v : values) {
+			v = v.trim();
+			set.add((CPathUtils.isUri(v)) ? v : v.toLowerCase());
+		}
+		return StringUtils.join(set, ",");
+	}
+
+	// a new copy (link) of the cached result file, or null
+	private ServiceResponse cachedGraphResult(String key) {
+		final ResultCache cache = graphCache;
+		if(cache == null)
+			return null;
+		
+		ServiceResponse res = cache.get(key);
+		if(res != null)
+			log.debug("graph query result from the cache: " + key);
+		return res;
+	}
+
+	// saves a copy of the result file (errors are not cached); returns the same response
+	private ServiceResponse cacheGraphResult(String key, ServiceResponse result) {
+		final ResultCache cache = graphCache;
+		if(cache != null && result instanceof DataResponse)
+			cache.put(key, (DataResponse) result);
+		return result;
+	}
+
+
 	@Override
 	public ServiceResponse getCommonStream(final OutputFormat format, 
 		final String[] sources, final Integer limit, Direction direction,
 		final String[] organisms, final String[] datasources)
 	{
-		if(!paxtoolsModelReady()) 
+		if(!paxtoolsModelReady() || searcher == null) 
 			return new ErrorResponse(MAINTENANCE,"Waiting for the initialization to complete (try again later)...");
 		
-		final String[] src = findUrisByIds(sources);
-
 		if (direction == Direction.BOTHSTREAM) {
 			return new ErrorResponse(BAD_REQUEST, "Direction cannot be BOTHSTREAM for the COMMONSTREAM query");
 		} else if(direction == null) {
 			direction = Direction.DOWNSTREAM;
 		}
 		
+		final String key = graphCacheKey(GraphType.COMMONSTREAM, format, sources, null, 
+				limit, direction, organisms, datasources);
+		ServiceResponse cached = cachedGraphResult(key);
+		if(cached != null)
+			return cached;
+		
+		final Direction dir = direction;
+		//concurrent identical requests share the result
+		return singleFlight.execute(key, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() {
+				return commonStream(key, format, sources, limit, dir, organisms, datasources);
+			}
+		});
+	}
+
+	// runs the query (not cached), converts and caches the result
+	private ServiceResponse commonStream(String key, OutputFormat format, String[] sources, Integer limit, Direction direction, 
+			String[] organisms, String[] datasources)
+	{
+		final String[] src = findUrisByIds(sources);
+		
 		// execute the paxtools graph query
 		try {
 			// init source elements
@@ -374,8 +740,10 @@ public class CPathServiceImpl implements CPathService {
 			}
 
 			// Execute the query, get result elements
-			elements = QueryExecuter
-					.runCommonStreamWithPOI(elements, paxtoolsModel, direction, limit,
+			final QueryGraph graph = queryGraph; //null until it's built
+			elements = (graph != null) 
+				? graph.runCommonStreamWithPOI(elements, direction, limit, organisms, datasources)
+					: QueryExecuter.runCommonStreamWithPOI(elements, paxtoolsModel, direction, limit,
 							createFilters(organisms, datasources));
 
 			if(elements != null) {
@@ -384,7 +752,7 @@ public class CPathServiceImpl implements CPathService {
 				Cloner cloner = new Cloner(this.simpleIO.getEditorMap(), this.simpleIO.getFactory());
 				Model m = cloner.clone(paxtoolsModel, elements);
 				m.setXmlBase(paxtoolsModel.getXmlBase());
-				return convert(m, format);
+				return cacheGraphResult(key, convert(m, format));
 			} else {
 				return new ErrorResponse(NO_RESULTS_FOUND,
 						"No results found by URI(s): " + Arrays.toString(src));
@@ -411,35 +779,28 @@ public class CPathServiceImpl implements CPathService {
 			return identifiers;
 		
 		final Set<String> uris = new TreeSet<String>();
+		final Set<String> ids = new LinkedHashSet<String>(); //unique
 
-		// id-mapping: get primary IDs where possible; 
-		// build a Lucene query string (will be eq. to xrefid:"A" OR xrefid:"B" OR ...)
-		final StringBuilder q = new StringBuilder();
 		for (String identifier : identifiers) {
-			if(identifier.toLowerCase().startsWith("http://")) {
+			if(CPathUtils.isUri(identifier)) {
 				// it must be an existing BioPAX object URI (seems, the user hopes so)
 				uris.add(identifier);
 				//also, if it's a canonical Identifiers.org URI, -
 				if(identifier.startsWith("http://identifier.org/")) {
 					//extract the id from the URI
-					String id = CPathUtils.idfromNormalizedUri(identifier);
-					if(!q.toString().contains(id))
-						q.append("xrefid:\"").append(id).append("\" ");
+					ids.add(CPathUtils.idfromNormalizedUri(identifier));
 				}
 			}
 			else {
 				//id-mapping step is not required (new full-text index associates IDs of supported types with BioPAX objects)
-				if (!q.toString().contains(identifier))
-					q.append("xrefid:\"").append(identifier).append("\" ");
+				ids.add(identifier);
 			}
 		}
 
-		if (q.length() > 0) {
-			//find existing URIs by ids using full-text search (collect all hits, because the query is very specific.
-			final String query = q.toString().trim();
-			//search for Gene/PEs (instead of, as it used to be in older versions, searching for xrefs)
-			findAllUris(uris, query, PhysicalEntity.class);
-			findAllUris(uris, query, Gene.class);
+		final Searcher s = searcher;
+		if (!ids.isEmpty() && s != null) {
+			//find existing Gene/PE URIs by ids (instead of, as it used to be in older versions, searching for xrefs)
+			uris.addAll(s.findUrisByIds(ids));
 		}
 				
 		log.debug("findUrisByIds, seeds: " + uris + " were found by IDs: " + Arrays.toString(identifiers));
@@ -447,17 +808,6 @@ public class CPathServiceImpl implements CPathService {
 		return uris.toArray(new String[]{});
 	}
 
-	private void findAllUris(Set<String> collectedUris, String query, Class<? extends BioPAXElement> biopaxTypeFilter) {
-		log.debug("findAllUris, search in " + biopaxTypeFilter.getSimpleName() + " using query: " + query);
-		int page = 0; // will use search pagination; collect all hits from all result pages
-		SearchResponse resp = (SearchResponse) search(query, page, biopaxTypeFilter, null, null);
-		while (!resp.isEmpty()) {
-			for (SearchHit h : resp.getSearchHit()) collectedUris.add(h.getUri());
-			// go to next page
-			resp = (SearchResponse) search(query, ++page, biopaxTypeFilter, null, null);
-		}
-	}
-
 	@Override
 	public ServiceResponse traverse(String propertyPath, String... sourceUris) {
 		
@@ -510,11 +860,11 @@ public class CPathServiceImpl implements CPathService {
 
 		SearchResponse topPathways = new SearchResponse();
 		final List<SearchHit> hits = topPathways.getSearchHit(); //empty list
-		int page = 0; // will use search pagination
 		
+		//all the hits, page by page, without the search time limit
 		SearchResponse r = null;
 		try {
-			r = searcher.search(q, page, Pathway.class, datasources, organisms);
+			r = searcher.scan(q, null, Pathway.class, datasources, organisms);
 		} catch(Exception e) {
 			log.error("topPathways() failed", e);
 			return new ErrorResponse(INTERNAL_ERROR, e);
@@ -524,7 +874,9 @@ public class CPathServiceImpl implements CPathService {
 		final int numPathways = r.getNumHits();
 		int processed = 0;
 		while(!r.isEmpty()) {
-			log.debug("Retrieving top pathways search results, page #" + page);
+			log.debug("Retrieving top pathways search results, page #" + r.getPageNo());
+			if(r.isPartial()) //should not happen (no time limit), but if it does, let the client know
+				topPathways.setPartial(true);
 			//keep only pathways where 'pathway' index field
 			//is empty (no controlledOf and pathwayComponentOf values)
 			for(SearchHit h : r.getSearchHit()) {
@@ -553,9 +905,9 @@ public class CPathServiceImpl implements CPathService {
 			if(processed >= numPathways)
 				break; //may save us one uselss query
 			
-			// go next page
+			// go next page (after the last hit)
 			try {
-				r = searcher.search(q, ++page, Pathway.class, datasources, organisms);
+				r = searcher.scan(q, r.getCursor(), Pathway.class, datasources, organisms);
 			} catch(Exception e) {
 				log.error("topPathways() failed", e);
 				return new ErrorResponse(INTERNAL_ERROR, e);
@@ -580,6 +932,8 @@ public class CPathServiceImpl implements CPathService {
 	
 	public void setBlacklist(Blacklist blacklist) {
 		this.blacklist = blacklist;
+		if(queryGraph != null)
+			buildQueryGraph();
 	}
 
 	
@@ -758,11 +1112,16 @@ public class CPathServiceImpl implements CPathService {
 		// set for this service
 
 		log.info("Associating more identifies with BioPAX model objects' using child elements' xrefs and id-mapping...");
-		addOtherIdsAsAnnotations(3);
+		Map<String, Set<String>> otherIds = otherIds(3);
 
 		//Build the full-text (lucene) index
-		SearchEngine searchEngine = new SearchEngine(getModel(), cpath.indexDir());
-		searchEngine.index();
+		SearchEngine searchEngine = searchEngine();
+		searchEngine.setOtherIds(otherIds);
+		try {
+			searchEngine.index();
+		} finally {
+			searchEngine.setOtherIds(null); //not needed anymore
+		}
 
 		// Updates counts of pathways, etc. and saves in the Metadata table.
      	// This depends on the full-text index, which must have been created already (otherwise, results will be wrong).
@@ -773,32 +1132,67 @@ public class CPathServiceImpl implements CPathService {
 		for (Metadata md : metadataRepository.findAll())
 			if (!md.isNotPathwayData())
 				pathwayMetadata.add(md);
+		updateCounts(pathwayMetadata);
+
+		log.info("index(), all done.");
+	}
+
+	public void index(String datasource) throws IOException {
+		if(!cpath.isAdminEnabled())
+			throw new IllegalStateException("Admin mode is not enabled");
+
+		Metadata metadata = metadataRepository.findByIdentifier(datasource);
+		if(metadata == null)
+			throw new IllegalArgumentException("Unknown data source: " + datasource);
+
+		if(paxtoolsModel==null)
+			paxtoolsModel = CPathUtils.loadMainBiopaxModel();
+
+		log.info("Associating more identifies with BioPAX model objects' using child elements' xrefs and id-mapping...");
+		Map<String, Set<String>> otherIds = otherIds(3);
+
+		//Update the existing full-text (lucene) index
+		SearchEngine searchEngine = searchEngine();
+		searchEngine.setOtherIds(otherIds);
+		try {
+			searchEngine.update(metadata.getUri());
+		} finally {
+			searchEngine.setOtherIds(null); //not needed anymore
+		}
+
+		setSearcher(searchEngine);
+		if (!metadata.isNotPathwayData()) {
+			log.info("Updating pathway/interaction/participant counts of " + datasource);
+			updateCounts(Collections.singletonList(metadata));
+		}
+
+		log.info("index(" + datasource + "), all done.");
+	}
+
+	// counts pathways, interactions, and molecules/genes - per data source, all at once
+	private void updateCounts(List<Metadata> pathwayMetadata) {
+		Map<String, int[]> counts = searcher.countByDatasource(Arrays.<Class<? extends BioPAXElement>>asList(
+				Pathway.class, Interaction.class, PhysicalEntity.class, Gene.class));
 
 		// for each non-warehouse metadata entry, update counts of pathways, etc.
 		for (Metadata md : pathwayMetadata) {
 			String name = md.standardName();
-			String[] dsUrisFilter = new String[] { md.getUri() };
+			int[] c = counts.get(md.getUri());
+			if(c == null)
+				c = new int[4]; //no data
 
-			SearchResponse sr = searcher.search("*", 0, Pathway.class, dsUrisFilter, null);
-			md.setNumPathways(sr.getNumHits());
-			log.info(name + " - pathways: " + sr.getNumHits());
+			md.setNumPathways(c[0]);
+			log.info(name + " - pathways: " + c[0]);
 
-			sr = searcher.search("*", 0, Interaction.class, dsUrisFilter, null);
-			md.setNumInteractions(sr.getNumHits());
-			log.info(name + " - interactions: " + sr.getNumHits());
+			md.setNumInteractions(c[1]);
+			log.info(name + " - interactions: " + c[1]);
 
-			Integer count;
-			sr = searcher.search("*", 0, PhysicalEntity.class, dsUrisFilter, null);
-			count = sr.getNumHits();
-			sr = searcher.search("*", 0, Gene.class, dsUrisFilter, null);
-			count += sr.getNumHits();
+			int count = c[2] + c[3];
 			md.setNumPhysicalEntities(count);
 			log.info(name + " - molecules, complexes and genes: " + count);
 		}
 
 		metadataRepository.save(pathwayMetadata);
-
-		log.info("index(), all done.");
 	}
 
 	@Override
@@ -812,8 +1206,29 @@ public class CPathServiceImpl implements CPathService {
 		return save(metadata);
 	}
 
-	private void addOtherIdsAsAnnotations(final int depth) {
+	// the service's search engine (for the current model) or a new one that replaces (and closes) the current searcher
+	private SearchEngine searchEngine() {
+		if(searcher instanceof SearchEngine && ((SearchEngine) searcher).getModel() == getModel()) {
+			SearchEngine searchEngine = (SearchEngine) searcher;
+			searchEngine.setIndexThreads(cpath.getIndexThreads());
+			searchEngine.setRamBufferSizeMB(cpath.getIndexRamBufferSizeMB());
+			return searchEngine;
+		}
+		
+		SearchEngine searchEngine = new SearchEngine(getModel(), cpath.indexDir());
+		searchEngine.setIndexThreads(cpath.getIndexThreads());
+		searchEngine.setRamBufferSizeMB(cpath.getIndexRamBufferSizeMB());
+		final Searcher old = searcher;
+		setSearcher(searchEngine);
+		if(old instanceof SearchEngine)
+			((SearchEngine) old).close();
+		return searchEngine;
+	}
+
+	// other IDs of the entities and entity references, by URI (the model is not modified)
+	private Map<String, Set<String>> otherIds(final int depth) {
 	//Can't use multiple threads (spring-data-jpa/hibernate errors occur in production, with filesystem H2 db...)
+		final Map<String, Set<String>> otherIds = new HashMap<String, Set<String>>();
 		for(final BioPAXElement bpe : getModel().getObjects()) {
 			if(!(bpe instanceof Entity || bpe instanceof EntityReference))
 				continue; //skip for UtilityClass but EntityReference
@@ -860,12 +1275,13 @@ public class CPathServiceImpl implements CPathService {
 			addSupportedIdsThatMapToUniprotId(uniprotIds, ids);
 
 			if(!ids.isEmpty()) {
-				bpe.getAnnotations().put(SearchEngine.FIELD_XREFID, ids);
+				otherIds.put(bpe.getUri(), ids);
 				if(log.isDebugEnabled())
-					log.debug("addOtherIdsAsAnnotations, " + bpe.getModelInterface().getSimpleName()
+					log.debug("otherIds, " + bpe.getModelInterface().getSimpleName()
 							+ " (" + bpe.getUri() + ") maps to: " + ids);
 			}
 		}
+		return otherIds;
 	}
 
 	void addSupportedIdsThatMapToChebi(List<String> chebiIds, final Set<String> resultIds) {
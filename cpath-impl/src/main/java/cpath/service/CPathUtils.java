@@ -13,6 +13,7 @@ import java.lang.reflect.Method;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -52,6 +53,9 @@ public final class CPathUtils {
     
 	// LOADER can handle file://, ftp://, http://  PROVIDER_URL resources
 	public static final ResourceLoader LOADER = new DefaultResourceLoader();
+
+	// absolute URI, such as http://..., https://... (but IDs like CHEBI:1234 have no '//')
+	private static final Pattern URI_PATTERN = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]*://");
 		
 	
 	private CPathUtils() {
@@ -60,7 +64,8 @@ public final class CPathUtils {
 
     
     /**
-     * Empties the directory.
+     * Empties the directory (removes all the files and sub-directories)
+     * or creates it if it does not exist.
      * 
      * @param path a directory
      * @return
@@ -71,6 +76,7 @@ public final class CPathUtils {
           for(int i=0; i<files.length; i++) {
              if(files[i].isDirectory()) {
             	 cleanupDirectory(files[i]);
+            	 files[i].delete();
              }
              else {
                files[i].delete();
@@ -477,6 +483,19 @@ public final class CPathUtils {
 	}
 	
 	
+	/**
+	 * Whether the value (e.g., a query parameter) is a URI of any scheme 
+	 * (http, https, ftp, etc.) rather than an identifier or name;
+	 * URIs are case-sensitive, unlike the IDs and names.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static boolean isUri(String value) {
+		return URI_PATTERN.matcher(value).lookingAt();
+	}
+	
+	
 	/**
 	 * Imports the Main BioPAX Model from the merged all-in-one BioPAX archive.
 	 * 
@@ -0,0 +1,591 @@
+package cpath.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.biopax.paxtools.model.level3.Level3Element;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.Graph;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
+import org.biopax.paxtools.query.wrapperL3.Filter;
+
+/**
+ * An immutable, compact copy of a (fully initialized) paxtools query graph:
+ * the nodes are numbered 0..n-1; the upstream, downstream, upper and lower
+ * equivalent neighbors of every node are kept in CSR arrays (offsets and
+ * node numbers); the node flags (breadth, ubique) - in bitsets.
+ *
+ * The paxtools graph query algorithms (BFS-based neighborhood, paths-between,
+ * paths-from-to and common stream) are reimplemented on top of it;
+ * organism and data source filters become a bitset of the allowed nodes.
+ * A traversal uses the marks (run numbers) instead of maps or clearing the arrays,
+ * in a working memory that is reused by the next queries (a few are kept idle;
+ * more concurrent queries allocate their own, which are dropped afterwards).
+ *
+ * @author rodche
+ */
+final class CompactGraph {
+
+	private static final int INF = Integer.MAX_VALUE / 4;
+
+	private final Node[] nodes;
+	private final Map<Node, Integer> numbers;
+	private final Object[] wrapped; //model objects (null if unknown)
+	private final Adjacency up; //sources of the upstream edges
+	private final Adjacency down; //targets of the downstream edges
+	private final Adjacency upper; //upper equivalents (e.g., complexes, generics)
+	private final Adjacency lower; //lower equivalents (e.g., members)
+	private final BitSet breadth;
+	private final BitSet ubique;
+
+	private final ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<Workspace>();
+	// max. no. idle workspaces to keep (a workspace is 14 int arrays of the graph size)
+	private final int maxIdleWorkspaces;
+
+	// compressed sparse rows: neighbors of node i are targets[offsets[i]]..targets[offsets[i+1]-1]
+	private static final class Adjacency {
+		final int[] offsets;
+		final int[] targets;
+
+		Adjacency(int[][] lists) {
+			offsets = new int[lists.length + 1];
+			for(int i = 0; i < lists.length; i++)
+				offsets[i+1] = offsets[i] + lists[i].length;
+			targets = new int[offsets[lists.length]];
+			for(int i = 0; i < lists.length; i++)
+				System.arraycopy(lists[i], 0, targets, offsets[i], lists[i].length);
+		}
+	}
+
+	private CompactGraph(Node[] nodes, Map<Node, Integer> numbers, Object[] wrapped,
+			Adjacency up, Adjacency down, Adjacency upper, Adjacency lower, BitSet breadth, BitSet ubique,
+			int maxIdleWorkspaces)
+	{
+		this.nodes = nodes;
+		this.numbers = numbers;
+		this.wrapped = wrapped;
+		this.up = up;
+		this.down = down;
+		this.upper = upper;
+		this.lower = lower;
+		this.breadth = breadth;
+		this.ubique = ubique;
+		this.maxIdleWorkspaces = maxIdleWorkspaces;
+	}
+
+	/**
+	 * Compiles the paxtools graph.
+	 *
+	 * @param graph paxtools query graph
+	 * @param nodes all the nodes of the graph (already initialized)
+	 * @param maxIdleWorkspaces max. number of query working memories to keep for reuse
+	 * @return
+	 */
+	static CompactGraph build(Graph graph, List<Node> nodes, int maxIdleWorkspaces) {
+		final int n = nodes.size();
+		final Map<Node, Integer> numbers = new IdentityHashMap<Node, Integer>(n);
+		for(int i = 0; i < n; i++)
+			numbers.put(nodes.get(i), i);
+
+		final Object[] wrapped = new Object[n];
+		final BitSet breadth = new BitSet(n);
+		final BitSet ubique = new BitSet(n);
+		final int[][] up = new int[n][];
+		final int[][] down = new int[n][];
+		final int[][] upper = new int[n][];
+		final int[][] lower = new int[n][];
+		for(int i = 0; i < n; i++) {
+			final Node node = nodes.get(i);
+			final Set<Object> objects = graph.getWrappedSet(Collections.singleton(node));
+			wrapped[i] = (objects.isEmpty()) ? null : objects.iterator().next();
+			breadth.set(i, node.isBreadthNode());
+			ubique.set(i, node.isUbique());
+			up[i] = edgeEnds(node.getUpstream(), numbers, true);
+			down[i] = edgeEnds(node.getDownstream(), numbers, false);
+			upper[i] = toNumbers(node.getUpperEquivalent(), numbers);
+			lower[i] = toNumbers(node.getLowerEquivalent(), numbers);
+		}
+
+		return new CompactGraph(nodes.toArray(new Node[n]), numbers, wrapped,
+				new Adjacency(up), new Adjacency(down), new Adjacency(upper), new Adjacency(lower),
+				breadth, ubique, maxIdleWorkspaces);
+	}
+
+	int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * @param node number
+	 * @return the model object of the node or null
+	 */
+	Object getWrapped(int node) {
+		return wrapped[node];
+	}
+
+	/**
+	 * Gets the nodes that pass all the filters.
+	 *
+	 * @param filters organism, data source, etc.
+	 * @return allowed nodes or null (all) when there are no filters
+	 */
+	BitSet allowed(Filter... filters) {
+		if(filters == null || filters.length == 0)
+			return null;
+
+		final BitSet allowed = new BitSet(nodes.length);
+		for(int i = 0; i < nodes.length; i++) {
+			boolean ok = true;
+			if(wrapped[i] instanceof Level3Element) {
+				for(Filter filter : filters) {
+					if(!filter.okToTraverse((Level3Element) wrapped[i])) {
+						ok = false;
+						break;
+					}
+				}
+			}
+			allowed.set(i, ok);
+		}
+		return allowed;
+	}
+
+	/**
+	 * Gets the numbers of the (allowed) nodes.
+	 *
+	 * @param set nodes of this graph
+	 * @param allowed nodes or null (all)
+	 * @return
+	 */
+	int[] numbers(Collection<Node> set, BitSet allowed) {
+		final int[] a = new int[set.size()];
+		int k = 0;
+		for(Node node : set) {
+			final Integer i = numbers.get(node);
+			if(i != null && (allowed == null || allowed.get(i)))
+				a[k++] = i;
+		}
+		return Arrays.copyOf(a, k);
+	}
+
+	/**
+	 * Neighborhood query (same as the paxtools NeighborhoodQuery).
+	 *
+	 * @param source seed nodes
+	 * @param direction UPSTREAM, DOWNSTREAM or BOTHSTREAM
+	 * @param limit
+	 * @param allowed nodes or null (all)
+	 * @return result nodes
+	 */
+	Set<GraphObject> neighborhood(int[] source, Direction direction, int limit, BitSet allowed) {
+		final Workspace ws = workspace(allowed);
+		try {
+			final BitSet result = new BitSet(nodes.length);
+			if(direction == Direction.UPSTREAM || direction == Direction.BOTHSTREAM) {
+				ws.bfs(source, false, limit, null);
+				ws.addLabeled(result);
+			}
+			if(direction == Direction.DOWNSTREAM || direction == Direction.BOTHSTREAM) {
+				ws.bfs(source, true, limit, null);
+				ws.addLabeled(result);
+			}
+			return toNodes(result);
+		} finally {
+			release(ws);
+		}
+	}
+
+	/**
+	 * Paths-between query (same as the paxtools PathsBetweenQuery): the nodes 
+	 * on the paths (of the limited length) from any seed set to another.
+	 *
+	 * Like PathsBetweenQuery, it runs a forward and a backward BFS from each seed set;
+	 * a node x is in the result when fwd(A,x) + rev(B,x) &lt;= limit for some sets A != B.
+	 * Instead of the distances from every set, only the two best forward distances
+	 * of a node are kept - fwd1 (from set a) and fwd2 (the best from the other sets), -
+	 * and the backward ones, rev1 (from set b) and rev2 (the best from the sets but b), 
+	 * which gives the same minimum sum over such pairs: if a != b, it is fwd1 + rev1; 
+	 * otherwise, for any pair A != B, either A != a, and the sum is at least fwd2 + rev1, 
+	 * or A == a, then B != a (== b), and the sum is at least fwd1 + rev2; both are sums 
+	 * of such pairs, so the minimum is the smaller one. A BFS labels a node once, 
+	 * so each set updates the best distances of the node once per direction (see best).
+	 *
+	 * @param sources seed sets (e.g., the states of each gene)
+	 * @param limit
+	 * @param allowed nodes or null (all)
+	 * @return result nodes
+	 */
+	Set<GraphObject> pathsBetween(List<int[]> sources, int limit, BitSet allowed) {
+		final Workspace ws = workspace(allowed);
+		try {
+			ws.initBest();
+			final int q = ws.nextQuery();
+			for(int s = 0; s < sources.size(); s++) {
+				ws.bfs(sources.get(s), true, limit, null);
+				for(int k = 0; k < ws.size; k++)
+					ws.best(ws.labeled[k], ws.dist[ws.labeled[k]], s, q, ws.fwd1, ws.fwd1Set, ws.fwd2);
+				ws.bfs(sources.get(s), false, limit, null);
+				for(int k = 0; k < ws.size; k++)
+					ws.best(ws.labeled[k], ws.dist[ws.labeled[k]], s, q, ws.rev1, ws.rev1Set, ws.rev2);
+			}
+
+			final BitSet result = new BitSet(nodes.length);
+			for(int x = 0; x < nodes.length; x++) {
+				if(ws.seen[x] != q || ws.fwd1[x] >= INF || ws.rev1[x] >= INF)
+					continue;
+				final int length = (ws.fwd1Set[x] != ws.rev1Set[x])
+					? ws.fwd1[x] + ws.rev1[x]
+						: Math.min(ws.fwd1[x] + ws.rev2[x], ws.fwd2[x] + ws.rev1[x]);
+				if(length <= limit)
+					result.set(x);
+			}
+			return toNodes(result);
+		} finally {
+			release(ws);
+		}
+	}
+
+	/**
+	 * Paths-from-to query (same as the paxtools PathsFromToQuery with LimitType.NORMAL):
+	 * the nodes on the paths (of the limited length) from the source to the target nodes.
+	 *
+	 * @param source
+	 * @param target
+	 * @param limit
+	 * @param allowed nodes or null (all)
+	 * @return result nodes
+	 */
+	Set<GraphObject> pathsFromTo(int[] source, int[] target, int limit, BitSet allowed) {
+		final Workspace ws = workspace(allowed);
+		try {
+			return toNodes(ws.pathsFromTo(source, target, limit));
+		} finally {
+			release(ws);
+		}
+	}
+
+	/**
+	 * Common stream query with the paths from the seeds to the common stream
+	 * nodes (or back, for the UPSTREAM direction), like the paxtools
+	 * QueryExecuter.runCommonStreamWithPOI does.
+	 *
+	 * @param sources seed sets
+	 * @param direction UPSTREAM or DOWNSTREAM
+	 * @param limit
+	 * @param allowed nodes or null (all)
+	 * @return result nodes
+	 */
+	Set<GraphObject> commonStreamWithPOI(List<int[]> sources, Direction direction, int limit, BitSet allowed) {
+		final Workspace ws = workspace(allowed);
+		try {
+			final boolean downstream = (direction == Direction.DOWNSTREAM);
+			// count the seed sets every node is reached from
+			ws.initBest();
+			final int q = ws.nextQuery();
+			for(int[] set : sources) {
+				ws.bfs(set, downstream, limit, null);
+				for(int k = 0; k < ws.size; k++) {
+					final int x = ws.labeled[k];
+					if(ws.seen[x] != q) {
+						ws.seen[x] = q;
+						ws.fwd1[x] = 0;
+					}
+					ws.fwd1[x]++;
+				}
+			}
+			// reached from all the sets (then - by the last BFS too)
+			int[] common = new int[ws.size];
+			int c = 0;
+			for(int k = 0; k < ws.size; k++) {
+				if(ws.fwd1[ws.labeled[k]] == sources.size())
+					common[c++] = ws.labeled[k];
+			}
+			if(c == 0)
+				return Collections.emptySet();
+			common = Arrays.copyOf(common, c);
+
+			// paths between the seeds and the common stream
+			int n = 0;
+			for(int[] set : sources)
+				n += set.length;
+			final int[] seeds = new int[n];
+			n = 0;
+			for(int[] set : sources) {
+				System.arraycopy(set, 0, seeds, n, set.length);
+				n += set.length;
+			}
+
+			return toNodes((downstream)
+				? ws.pathsFromTo(seeds, common, limit) : ws.pathsFromTo(common, seeds, limit));
+		} finally {
+			release(ws);
+		}
+	}
+
+	private Set<GraphObject> toNodes(BitSet set) {
+		final Set<GraphObject> result = new HashSet<GraphObject>();
+		for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1))
+			result.add(nodes[i]);
+		return result;
+	}
+
+	private Workspace workspace(BitSet allowed) {
+		Workspace ws = workspaces.poll();
+		if(ws == null)
+			ws = new Workspace();
+		ws.allowed = allowed;
+		return ws;
+	}
+
+	private void release(Workspace ws) {
+		ws.allowed = null;
+		if(workspaces.size() < maxIdleWorkspaces)
+			workspaces.offer(ws);
+	}
+
+	private static int[] edgeEnds(Collection<Edge> edges, Map<Node, Integer> numbers, boolean source) {
+		final int[] a = new int[edges.size()];
+		int k = 0;
+		for(Edge edge : edges) {
+			final Integer i = numbers.get((source) ? edge.getSourceNode() : edge.getTargetNode());
+			if(i != null)
+				a[k++] = i;
+		}
+		return (k == a.length) ? a : Arrays.copyOf(a, k);
+	}
+
+	private static int[] toNumbers(Collection<Node> set, Map<Node, Integer> numbers) {
+		final int[] a = new int[set.size()];
+		int k = 0;
+		for(Node node : set) {
+			final Integer i = numbers.get(node);
+			if(i != null)
+				a[k++] = i;
+		}
+		return (k == a.length) ? a : Arrays.copyOf(a, k);
+	}
+
+	/*
+	 * Working memory of a query (not thread-safe) - BFS distances, marks, queue, etc.;
+	 * a node is labeled (reached) in the current BFS when mark[node] == run.
+	 */
+	private final class Workspace {
+		final int[] dist = new int[nodes.length];
+		final int[] mark = new int[nodes.length];
+		final int[] equivMark = new int[nodes.length];
+		final int[] labeled = new int[nodes.length]; //nodes labeled by the current BFS
+		final int[] stack = new int[nodes.length];
+		final int[] queue = new int[2 * nodes.length + 1]; //a node is added once per BFS, to the head or tail
+		int run, equivRun, query;
+		int size, head, tail;
+
+		//query-level (valid when seen[node] == query); allocated on demand
+		int[] seen, fwd1, fwd1Set, fwd2, rev1, rev1Set, rev2;
+
+		BitSet allowed; //or null (all)
+		BitSet stop;
+		boolean downstream;
+		int limit;
+
+		/*
+		 * Breadth-first search, which labels the nodes with the distance from the sources
+		 * (counted in the breadth nodes, as in the paxtools BFS), the equivalents of
+		 * a labeled node getting the same distance; does not go further than the limit,
+		 * from the ubique nodes or from the nodes in the stop set (and their equivalents).
+		 */
+		void bfs(int[] source, boolean downstream, int limit, BitSet stop) {
+			if(run == Integer.MAX_VALUE) {
+				Arrays.fill(mark, 0);
+				run = 0;
+			}
+			run++;
+			size = 0;
+			head = tail = nodes.length;
+			this.downstream = downstream;
+			this.limit = limit;
+			this.stop = stop;
+
+			for(int s : source) {
+				if(mark[s] != run) {
+					label(s, 0);
+					if(limit > 0)
+						queue[tail++] = s;
+				}
+			}
+			for(int s : source)
+				labelEquivalents(s, limit > 0);
+
+			while(head < tail)
+				process(queue[head++]);
+		}
+
+		private void process(int current) {
+			if(ubique.get(current))
+				return;
+
+			final Adjacency adj = (downstream) ? down : up;
+			final int d0 = (downstream || !breadth.get(current)) ? dist[current] : dist[current] + 1;
+			for(int k = adj.offsets[current]; k < adj.offsets[current+1]; k++) {
+				final int neigh = adj.targets[k];
+				if(allowed != null && !allowed.get(neigh))
+					continue;
+				final boolean breadthNode = breadth.get(neigh);
+				final int d = (breadthNode && downstream) ? d0 + 1 : d0;
+				final boolean further = (stop == null || !stop.get(neigh))
+					&& (!breadthNode || d < limit) && !ubique.get(neigh);
+				if(mark[neigh] != run) {
+					label(neigh, d);
+					if(further)
+						enqueue(neigh);
+				}
+				labelEquivalents(neigh, further);
+			}
+		}
+
+		private void label(int node, int d) {
+			mark[node] = run;
+			dist[node] = d;
+			labeled[size++] = node;
+		}
+
+		private void enqueue(int node) {
+			if(breadth.get(node))
+				queue[tail++] = node;
+			else
+				queue[--head] = node;
+		}
+
+		// labels the upper equivalents and then the lower ones (recursively) with the node's distance
+		private void labelEquivalents(int node, boolean further) {
+			labelEquivalents(node, upper, further);
+			labelEquivalents(node, lower, further);
+		}
+
+		private void labelEquivalents(int node, Adjacency adj, boolean further) {
+			final int d = dist[node];
+			final int r = nextEquivRun();
+			int top = 0;
+			stack[top++] = node;
+			equivMark[node] = r;
+			while(top > 0) {
+				final int x = stack[--top];
+				for(int k = adj.offsets[x]; k < adj.offsets[x+1]; k++) {
+					final int e = adj.targets[k];
+					if(equivMark[e] == r || (allowed != null && !allowed.get(e)))
+						continue;
+					equivMark[e] = r;
+					if(mark[e] != run) {
+						label(e, d);
+						if(further)
+							enqueue(e);
+					}
+					stack[top++] = e;
+				}
+			}
+		}
+
+		// the nodes and their upper and lower equivalents (recursively)
+		BitSet closure(int[] set) {
+			final BitSet closure = new BitSet(nodes.length);
+			for(int s : set) {
+				closure.set(s);
+				for(Adjacency adj : new Adjacency[]{upper, lower}) {
+					final int r = nextEquivRun();
+					int top = 0;
+					stack[top++] = s;
+					equivMark[s] = r;
+					while(top > 0) {
+						final int x = stack[--top];
+						for(int k = adj.offsets[x]; k < adj.offsets[x+1]; k++) {
+							final int e = adj.targets[k];
+							if(equivMark[e] == r || (allowed != null && !allowed.get(e)))
+								continue;
+							equivMark[e] = r;
+							closure.set(e);
+							stack[top++] = e;
+						}
+					}
+				}
+			}
+			return closure;
+		}
+
+		// forward BFS from the source (stops at the target) and backward from the target
+		BitSet pathsFromTo(int[] source, int[] target, int limit) {
+			initBest();
+			final int q = nextQuery();
+			bfs(source, true, limit, closure(target));
+			for(int k = 0; k < size; k++) {
+				final int x = labeled[k];
+				seen[x] = q;
+				fwd1[x] = dist[x];
+			}
+			final BitSet result = new BitSet(nodes.length);
+			bfs(target, false, limit, closure(source));
+			for(int k = 0; k < size; k++) {
+				final int x = labeled[k];
+				if(seen[x] == q && fwd1[x] + dist[x] <= limit)
+					result.set(x);
+			}
+			return result;
+		}
+
+		void addLabeled(BitSet set) {
+			for(int k = 0; k < size; k++)
+				set.set(labeled[k]);
+		}
+
+		void initBest() {
+			if(seen == null) {
+				seen = new int[nodes.length];
+				fwd1 = new int[nodes.length];
+				fwd1Set = new int[nodes.length];
+				fwd2 = new int[nodes.length];
+				rev1 = new int[nodes.length];
+				rev1Set = new int[nodes.length];
+				rev2 = new int[nodes.length];
+			}
+		}
+
+		int nextQuery() {
+			if(query == Integer.MAX_VALUE) {
+				Arrays.fill(seen, 0);
+				query = 0;
+			}
+			return ++query;
+		}
+
+		// updates the two best distances (from different sets) of the node
+		void best(int x, int d, int set, int q, int[] best1, int[] best1Set, int[] best2) {
+			if(seen[x] != q) {
+				seen[x] = q;
+				fwd1[x] = fwd2[x] = rev1[x] = rev2[x] = INF;
+				fwd1Set[x] = rev1Set[x] = -1;
+			}
+			if(d < best1[x]) {
+				best2[x] = best1[x];
+				best1[x] = d;
+				best1Set[x] = set;
+			} else if(d < best2[x]) {
+				best2[x] = d;
+			}
+		}
+
+		private int nextEquivRun() {
+			if(equivRun == Integer.MAX_VALUE) {
+				Arrays.fill(equivMark, 0);
+				equivRun = 0;
+			}
+			return ++equivRun;
+		}
+	}
+}
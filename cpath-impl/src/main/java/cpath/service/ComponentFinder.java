@@ -0,0 +1,116 @@
+package cpath.service;
+
+import java.util.Arrays;
+
+/**
+ * Finds strongly connected components of a directed graph
+ * (iterative Tarjan's algorithm, so that deep biopax hierarchies
+ * do not overflow the stack).
+ *
+ * Components are numbered in the order they are completed, i.e.,
+ * a component gets a greater number than any component reachable from it;
+ * so, processing components in this order visits successors first.
+ *
+ * @author rodche
+ */
+final class ComponentFinder {
+
+	private ComponentFinder() {
+	}
+
+	/**
+	 * Finds the strongly connected components.
+	 *
+	 * @param edges successors of each node (node ids are 0..edges.length-1)
+	 * @return component number of each node
+	 */
+	static int[] find(int[][] edges) {
+		final int n = edges.length;
+		final int[] index = new int[n];
+		final int[] low = new int[n];
+		final int[] component = new int[n];
+		Arrays.fill(index, -1);
+		final boolean[] onStack = new boolean[n];
+		final int[] stack = new int[n];
+		int sp = 0;
+		final int[] callNode = new int[n];
+		final int[] callEdge = new int[n];
+		int counter = 0;
+		int components = 0;
+
+		for(int root = 0; root < n; root++) {
+			if(index[root] >= 0)
+				continue;
+
+			int depth = 0;
+			callNode[0] = root;
+			callEdge[0] = 0;
+			index[root] = low[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+
+			while(depth >= 0) {
+				final int v = callNode[depth];
+				if(callEdge[depth] < edges[v].length) {
+					final int w = edges[v][callEdge[depth]++];
+					if(index[w] < 0) { //go deeper
+						index[w] = low[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						depth++;
+						callNode[depth] = w;
+						callEdge[depth] = 0;
+					} else if(onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+
+				// all successors of v are done
+				if(low[v] == index[v]) {
+					int w;
+					do {
+						w = stack[--sp];
+						onStack[w] = false;
+						component[w] = components;
+					} while(w != v);
+					components++;
+				}
+
+				depth--;
+				if(depth >= 0) {
+					final int u = callNode[depth];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+
+		return component;
+	}
+
+	/**
+	 * Groups the nodes by component.
+	 *
+	 * @param component component number of each node (see {@link #find(int[][])})
+	 * @return nodes of each component
+	 */
+	static int[][] members(int[] component) {
+		int count = 0;
+		for(int c : component)
+			count = Math.max(count, c + 1);
+
+		final int[] sizes = new int[count];
+		for(int c : component)
+			sizes[c]++;
+
+		final int[][] members = new int[count][];
+		for(int c = 0; c < count; c++)
+			members[c] = new int[sizes[c]];
+
+		Arrays.fill(sizes, 0);
+		for(int v = 0; v < component.length; v++)
+			members[component[v]][sizes[component[v]]++] = v;
+
+		return members;
+	}
+}
@@ -0,0 +1,144 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import cpath.service.jaxb.FacetCount;
+
+/**
+ * A Lucene hits collector that counts matching documents per
+ * datasource, organism (URIs) and BioPAX type (the doc values)
+ * - to be used together with another (top docs) collector in the same search pass.
+ *
+ * @author rodche
+ */
+final class FacetCounter extends Collector {
+
+	//multi-valued (sorted set) facet fields
+	private static final String[] SET_FIELDS = {SearchEngine.FIELD_DATASOURCE, SearchEngine.FIELD_ORGANISM};
+
+	private final Map<String, Map<String, Integer>> counts; //field -> value -> count
+
+	//current segment state
+	private final SortedSetDocValues[] setValues = new SortedSetDocValues[SET_FIELDS.length];
+	private final int[][] setCounts = new int[SET_FIELDS.length][]; //per ord
+	private SortedDocValues typeValues;
+	private int[] typeCounts; //per ord
+
+	FacetCounter() {
+		counts = new HashMap<String, Map<String, Integer>>();
+		for(String field : SET_FIELDS)
+			counts.put(field, new HashMap<String, Integer>());
+		counts.put(SearchEngine.FIELD_TYPE, new HashMap<String, Integer>());
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		//scores are not used
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		for(int i = 0; i < SET_FIELDS.length; i++) {
+			final SortedSetDocValues dv = setValues[i];
+			if(dv == null)
+				continue;
+			dv.setDocument(doc);
+			long ord;
+			while((ord = dv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS)
+				setCounts[i][(int) ord]++;
+		}
+
+		if(typeValues != null) {
+			final int ord = typeValues.getOrd(doc);
+			if(ord >= 0)
+				typeCounts[ord]++;
+		}
+	}
+
+	@Override
+	public void setNextReader(AtomicReaderContext context) throws IOException {
+		flush();
+
+		final AtomicReader reader = context.reader();
+		for(int i = 0; i < SET_FIELDS.length; i++) {
+			setValues[i] = reader.getSortedSetDocValues(SET_FIELDS[i]);
+			setCounts[i] = (setValues[i] != null) ? new int[(int) setValues[i].getValueCount()] : null;
+		}
+		typeValues = reader.getSortedDocValues(SearchEngine.FIELD_TYPE);
+		typeCounts = (typeValues != null) ? new int[typeValues.getValueCount()] : null;
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return true;
+	}
+
+	/**
+	 * Gets the facet counts, after the search is done.
+	 *
+	 * @return counts by field, then - by count (desc.)
+	 */
+	List<FacetCount> getFacetCounts() {
+		flush();
+
+		List<FacetCount> facets = new ArrayList<FacetCount>();
+		for(String field : counts.keySet()) {
+			for(Map.Entry<String, Integer> e : counts.get(field).entrySet())
+				facets.add(new FacetCount(field, e.getKey(), e.getValue()));
+		}
+
+		Collections.sort(facets, new Comparator<FacetCount>() {
+			@Override
+			public int compare(FacetCount o1, FacetCount o2) {
+				int c = o1.getField().compareTo(o2.getField());
+				if(c == 0)
+					c = o2.getCount().compareTo(o1.getCount());
+				if(c == 0)
+					c = o1.getValue().compareTo(o2.getValue());
+				return c;
+			}
+		});
+
+		return facets;
+	}
+
+	//adds the current segment counts to the totals (by value)
+	private void flush() {
+		for(int i = 0; i < SET_FIELDS.length; i++) {
+			if(setCounts[i] == null)
+				continue;
+			for(int ord = 0; ord < setCounts[i].length; ord++) {
+				if(setCounts[i][ord] > 0)
+					add(SET_FIELDS[i], setValues[i].lookupOrd(ord).utf8ToString(), setCounts[i][ord]);
+			}
+			setCounts[i] = null;
+		}
+
+		if(typeCounts != null) {
+			for(int ord = 0; ord < typeCounts.length; ord++) {
+				if(typeCounts[ord] > 0)
+					add(SearchEngine.FIELD_TYPE, typeValues.lookupOrd(ord).utf8ToString(), typeCounts[ord]);
+			}
+			typeCounts = null;
+		}
+	}
+
+	private void add(String field, String value, int count) {
+		Map<String, Integer> fieldCounts = counts.get(field);
+		Integer total = fieldCounts.get(value);
+		fieldCounts.put(value, (total == null) ? count : total + count);
+	}
+}
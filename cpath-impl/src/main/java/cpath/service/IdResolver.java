@@ -0,0 +1,222 @@
+package cpath.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, compact in-memory map from biological identifiers
+ * (the 'xrefid' values, lowercase) to the URIs of the physical entities and genes
+ * they are associated with - to quickly find graph query "seeds" without
+ * running full-text searches. The identifiers are kept sorted
+ * (for the binary search), with the postings - URI numbers - in a single array.
+ *
+ * It is built while indexing and saved to a file in the index directory.
+ *
+ * @author rodche
+ */
+final class IdResolver {
+
+	/**
+	 * File name (in the index directory).
+	 */
+	static final String FILE = "idresolver.dat";
+
+	private static final int FORMAT = 1;
+
+	private final String[] uris;
+	private final String[] ids; //sorted
+	private final int[] offsets; //postings of ids[i] are postings[offsets[i]]..postings[offsets[i+1]-1]
+	private final int[] postings; //URI numbers
+
+	private IdResolver(String[] uris, String[] ids, int[] offsets, int[] postings) {
+		this.uris = uris;
+		this.ids = ids;
+		this.offsets = offsets;
+		this.postings = postings;
+	}
+
+	/**
+	 * Finds URIs of the objects associated with the identifier.
+	 *
+	 * @param id identifier (case-insensitive)
+	 * @param result to add the URIs to
+	 */
+	void resolve(String id, Collection<String> result) {
+		int i = Arrays.binarySearch(ids, id.toLowerCase());
+		if(i >= 0) {
+			for(int p = offsets[i]; p < offsets[i+1]; p++)
+				result.add(uris[postings[p]]);
+		}
+	}
+
+	int numIds() {
+		return ids.length;
+	}
+
+	int numUris() {
+		return uris.length;
+	}
+
+	/**
+	 * Saves to the directory 
+	 * (writes a temporary file and then renames it).
+	 *
+	 * @param dir index directory
+	 * @throws IOException
+	 */
+	void write(File dir) throws IOException {
+		final File tmp = new File(dir, FILE + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(FORMAT);
+			out.writeInt(uris.length);
+			for(String uri : uris)
+				out.writeUTF(uri);
+			out.writeInt(ids.length);
+			for(int i = 0; i < ids.length; i++) {
+				out.writeUTF(ids[i]);
+				out.writeInt(offsets[i+1] - offsets[i]);
+				for(int p = offsets[i]; p < offsets[i+1]; p++)
+					out.writeInt(postings[p]);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), new File(dir, FILE).toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Loads from the directory.
+	 *
+	 * @param dir index directory
+	 * @return resolver or null when there is no file (e.g., older index)
+	 * @throws IOException when the file cannot be read
+	 */
+	static IdResolver read(File dir) throws IOException {
+		final File f = new File(dir, FILE);
+		if(!f.exists())
+			return null;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if(in.readInt() != FORMAT)
+				throw new IOException("Unsupported format: " + f.getPath());
+			final String[] uris = new String[in.readInt()];
+			for(int i = 0; i < uris.length; i++)
+				uris[i] = in.readUTF();
+			final int n = in.readInt();
+			final String[] ids = new String[n];
+			final int[] offsets = new int[n + 1];
+			int[] postings = new int[Math.max(n, 16)];
+			for(int i = 0; i < n; i++) {
+				ids[i] = in.readUTF();
+				final int size = in.readInt();
+				if(offsets[i] + size > postings.length)
+					postings = Arrays.copyOf(postings, Math.max(2 * postings.length, offsets[i] + size));
+				for(int k = 0; k < size; k++)
+					postings[offsets[i] + k] = in.readInt();
+				offsets[i+1] = offsets[i] + size;
+			}
+			return new IdResolver(uris, ids, offsets, Arrays.copyOf(postings, offsets[n]));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Collects (thread-safe) identifiers and URIs and builds the resolver.
+	 */
+	static final class Builder {
+		private final List<String> uris = new ArrayList<String>();
+		private final Map<String, Integer> uriNumbers = new HashMap<String, Integer>(); //assigned when first added
+		private final Map<String, List<Integer>> postings = new HashMap<String, List<Integer>>();
+
+		Builder() {
+		}
+
+		/**
+		 * Starts with the existing resolver's data,
+		 * except for the objects to be re-indexed or deleted.
+		 *
+		 * @param resolver
+		 * @param excludeUris
+		 */
+		Builder(IdResolver resolver, Set<String> excludeUris) {
+			if(resolver != null) {
+				for(int i = 0; i < resolver.ids.length; i++) {
+					for(int p = resolver.offsets[i]; p < resolver.offsets[i+1]; p++) {
+						final String uri = resolver.uris[resolver.postings[p]];
+						if(!excludeUris.contains(uri))
+							add(uri, resolver.ids[i]);
+					}
+				}
+			}
+		}
+
+		synchronized void add(String uri, Collection<String> ids) {
+			for(String id : ids)
+				add(uri, id.toLowerCase());
+		}
+
+		private synchronized void add(String uri, String id) {
+			Integer u = uriNumbers.get(uri);
+			if(u == null) {
+				u = uris.size();
+				uris.add(uri);
+				uriNumbers.put(uri, u);
+			}
+			List<Integer> list = postings.get(id);
+			if(list == null) {
+				list = new ArrayList<Integer>(1);
+				postings.put(id, list);
+			}
+			list.add(u); //duplicates are removed in build()
+		}
+
+		synchronized IdResolver build() {
+			final String[] ids = postings.keySet().toArray(new String[postings.size()]);
+			Arrays.sort(ids);
+			final int[][] lists = new int[ids.length][];
+			final int[] offsets = new int[ids.length + 1];
+			for(int i = 0; i < ids.length; i++) {
+				lists[i] = unique(postings.get(ids[i]));
+				offsets[i+1] = offsets[i] + lists[i].length;
+			}
+			final int[] p = new int[offsets[ids.length]];
+			for(int i = 0; i < ids.length; i++)
+				System.arraycopy(lists[i], 0, p, offsets[i], lists[i].length);
+			return new IdResolver(uris.toArray(new String[uris.size()]), ids, offsets, p);
+		}
+
+		// sorted unique URI numbers
+		private static int[] unique(List<Integer> list) {
+			final int[] a = new int[list.size()];
+			for(int i = 0; i < a.length; i++)
+				a[i] = list.get(i);
+			Arrays.sort(a);
+			int n = 0;
+			for(int i = 0; i < a.length; i++) {
+				if(n == 0 || a[i] != a[n-1])
+					a[n++] = a[i];
+			}
+			return (n < a.length) ? Arrays.copyOf(a, n) : a;
+		}
+	}
+}
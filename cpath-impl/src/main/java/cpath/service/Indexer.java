@@ -1,5 +1,18 @@
 package cpath.service;
 
 public interface Indexer {
+	
+	/**
+	 * Builds a new full-text index 
+	 * (deletes all the existing documents).
+	 */
 	void index();
+	
+	/**
+	 * Re-indexes only the objects associated 
+	 * with the data source (incremental update).
+	 * 
+	 * @param datasource Provenance URI
+	 */
+	void update(String datasource);
 }
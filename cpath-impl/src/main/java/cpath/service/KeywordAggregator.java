@@ -0,0 +1,191 @@
+package cpath.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.biopax.paxtools.controller.DataPropertyEditor;
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.util.Filter;
+
+/**
+ * Collects keywords - data property values of a biopax object
+ * and its child objects up to given depth (like ModelUtils.getKeywords does),
+ * but memoizes the keywords of each child object for each remaining depth,
+ * so that shared children (xrefs, controlled vocabularies, entity references,
+ * complexes, etc.) are not traversed again and again.
+ *
+ * Memoized values are kept as arrays of interned strings; the number
+ * of memoized entries is limited (after that, keywords are collected as usual);
+ * the instance is thread-safe and meant to be used during one indexing run only
+ * (then - cleared).
+ *
+ * @author rodche
+ */
+final class KeywordAggregator {
+
+	private final EditorMap editorMap = SimpleEditorMap.L3;
+	private final Filter<DataPropertyEditor> filter;
+	private final int depth;
+	private final int maxEntries;
+	private final AtomicInteger numEntries;
+
+	//memo.get(d): biopax object -> keywords of the object and its children up to depth d (d < this.depth)
+	private final List<ConcurrentMap<BioPAXElement, String[]>> memo;
+	private final ConcurrentMap<String, String> strings; //to intern the keywords
+
+	//properties to use - per biopax type
+	private final ConcurrentMap<Class<? extends BioPAXElement>, List<DataPropertyEditor>> dataEditors;
+	private final ConcurrentMap<Class<? extends BioPAXElement>, List<ObjectPropertyEditor>> objectEditors;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param depth how deep to go into the child objects (0 - use the object itself only)
+	 * @param filter data properties to use
+	 * @param maxEntries max. number of memoized (object, depth) keyword arrays
+	 */
+	KeywordAggregator(int depth, Filter<DataPropertyEditor> filter, int maxEntries) {
+		if(depth < 0)
+			throw new IllegalArgumentException("depth must not be negative");
+		this.depth = depth;
+		this.filter = filter;
+		this.maxEntries = maxEntries;
+		this.numEntries = new AtomicInteger();
+		this.memo = new ArrayList<ConcurrentMap<BioPAXElement, String[]>>(depth);
+		for(int d = 0; d < depth; d++)
+			memo.add(new ConcurrentHashMap<BioPAXElement, String[]>());
+		this.strings = new ConcurrentHashMap<String, String>();
+		this.dataEditors = new ConcurrentHashMap<Class<? extends BioPAXElement>, List<DataPropertyEditor>>();
+		this.objectEditors = new ConcurrentHashMap<Class<? extends BioPAXElement>, List<ObjectPropertyEditor>>();
+	}
+
+	/**
+	 * Gets the keywords of the biopax object and its children up to the depth.
+	 *
+	 * @param bpe
+	 * @return new modifiable set
+	 */
+	Set<String> getKeywords(BioPAXElement bpe) {
+		Set<String> keywords = new HashSet<String>();
+		collect(bpe, depth, keywords);
+		return keywords;
+	}
+
+	// adds the keywords of the object and its children up to depth d to the set
+	private void collect(BioPAXElement bpe, int d, Set<String> keywords) {
+		Collections.addAll(keywords, values(bpe));
+		if(d == 0)
+			return;
+		for(ObjectPropertyEditor editor : objectEditors(bpe)) {
+			for(Object child : editor.getValueFromBean(bpe)) {
+				if(child instanceof BioPAXElement)
+					Collections.addAll(keywords, keywords((BioPAXElement) child, d - 1));
+			}
+		}
+	}
+
+	// memoized keywords of the object and its children up to depth d (d < this.depth)
+	private String[] keywords(BioPAXElement bpe, int d) {
+		String[] keywords = memo.get(d).get(bpe);
+		if(keywords == null) {
+			if(d == 0) {
+				keywords = values(bpe);
+			} else {
+				Set<String> set = new HashSet<String>();
+				collect(bpe, d, set);
+				keywords = set.toArray(new String[set.size()]);
+			}
+			//another thread might have done the same (no problem)
+			memoize(d, bpe, keywords);
+		}
+		return keywords;
+	}
+
+	// the object's own data property values
+	private String[] values(BioPAXElement bpe) {
+		if(depth > 0) {
+			String[] values = memo.get(0).get(bpe);
+			if(values != null)
+				return values;
+		}
+
+		Set<String> values = new HashSet<String>();
+		for(DataPropertyEditor editor : dataEditors(bpe)) {
+			for(Object v : editor.getValueFromBean(bpe)) {
+				if(v != null && !editor.isUnknown(v))
+					values.add(intern(String.valueOf(v)));
+			}
+		}
+
+		String[] a = values.toArray(new String[values.size()]);
+		if(depth > 0)
+			memoize(0, bpe, a);
+		return a;
+	}
+
+	private void memoize(int d, BioPAXElement bpe, String[] keywords) {
+		if(numEntries.get() < maxEntries && memo.get(d).put(bpe, keywords) == null)
+			numEntries.incrementAndGet();
+	}
+
+	/**
+	 * Removes all the memoized keywords (to free the memory after indexing).
+	 */
+	void clear() {
+		for(ConcurrentMap<BioPAXElement, String[]> m : memo)
+			m.clear();
+		strings.clear();
+		numEntries.set(0);
+	}
+
+	/**
+	 * @return number of memoized (object, depth) keyword arrays
+	 */
+	int size() {
+		return numEntries.get();
+	}
+
+	private String intern(String s) {
+		String interned = strings.putIfAbsent(s, s);
+		return (interned != null) ? interned : s;
+	}
+
+	private List<DataPropertyEditor> dataEditors(BioPAXElement bpe) {
+		List<DataPropertyEditor> editors = dataEditors.get(bpe.getModelInterface());
+		if(editors == null) {
+			editors = new ArrayList<DataPropertyEditor>();
+			for(PropertyEditor editor : editorMap.getEditorsOf(bpe)) {
+				if(editor instanceof DataPropertyEditor && filter.filter((DataPropertyEditor) editor))
+					editors.add((DataPropertyEditor) editor);
+			}
+			dataEditors.put(bpe.getModelInterface(), editors);
+		}
+		return editors;
+	}
+
+	// object properties to follow (except for nextStep, as Fetcher.nextStepFilter does)
+	private List<ObjectPropertyEditor> objectEditors(BioPAXElement bpe) {
+		List<ObjectPropertyEditor> editors = objectEditors.get(bpe.getModelInterface());
+		if(editors == null) {
+			editors = new ArrayList<ObjectPropertyEditor>();
+			for(PropertyEditor editor : editorMap.getEditorsOf(bpe)) {
+				if(editor instanceof ObjectPropertyEditor
+						&& !editor.getProperty().equals("nextStep")
+						&& !editor.getProperty().equals("NEXT-STEP"))
+					editors.add((ObjectPropertyEditor) editor);
+			}
+			objectEditors.put(bpe.getModelInterface(), editors);
+		}
+		return editors;
+	}
+}
@@ -0,0 +1,101 @@
+package cpath.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple thread-safe, size-bounded LRU cache
+ * that counts hits, misses and evictions.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ *
+ * @author rodche
+ */
+final class LruCache<K,V> {
+
+	private final Map<K,V> map;
+	private final int maxSize;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize max. number of entries to keep
+	 */
+	LruCache(final int maxSize) {
+		if(maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be greater than zero");
+		this.maxSize = maxSize;
+		this.map = new LinkedHashMap<K,V>(16, 0.75f, true) { //access order
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+				if(size() > LruCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets the cached value and updates the hit/miss counters.
+	 *
+	 * @param key
+	 * @return value or null when not found
+	 */
+	synchronized V get(K key) {
+		V value = map.get(key);
+		if(value != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return value;
+	}
+
+	synchronized void put(K key, V value) {
+		map.put(key, value);
+	}
+
+	synchronized V remove(K key) {
+		return map.remove(key);
+	}
+
+	/**
+	 * Removes all entries (counters are not reset).
+	 */
+	synchronized void clear() {
+		map.clear();
+	}
+
+	synchronized int size() {
+		return map.size();
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "size: " + size() + " (max " + maxSize + "); hits: " + hits
+			+ ", misses: " + misses + ", evictions: " + evictions;
+	}
+}
@@ -0,0 +1,184 @@
+package cpath.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.BioSource;
+import org.biopax.paxtools.model.level3.Provenance;
+import org.biopax.paxtools.model.level3.Xref;
+import org.biopax.paxtools.query.wrapperL3.DataSourceFilter;
+import org.biopax.paxtools.query.wrapperL3.Filter;
+import org.biopax.paxtools.query.wrapperL3.OrganismFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Graph query filters as bitsets of the allowed {@link CompactGraph} nodes,
+ * so that the organism and datasource query parameters do not make the queries
+ * check every node's properties at every step.
+ *
+ * A bitset per value - URI, name and (organism) xref ID of every {@link Provenance}
+ * and {@link BioSource} in the model - is computed when the graph is built, and a query
+ * gets the union (OR) of its values' bitsets. Every bitset is computed with the paxtools
+ * filter itself ({@link OrganismFilter}, {@link DataSourceFilter}) for the single value,
+ * which gives exactly the same result as the filter with all the values, because
+ * the filter passes a node when any value matches (case-insensitive) or the node
+ * has no such property. Other values (not in the model, e.g., misspelled) are
+ * computed on first use, and the most recently used ones are kept.
+ *
+ * @author rodche
+ */
+final class NodeFilters {
+	private static final Logger LOG = LoggerFactory.getLogger(NodeFilters.class);
+
+	// max. no. cached bitsets of the values not in the model (a bitset takes graph size / 8 bytes)
+	private static final int MAX_CACHED = 32;
+
+	private final CompactGraph graph;
+	private final Map<String, BitSet> organisms; //value (key) -> nodes (read-only)
+	private final Map<String, BitSet> datasources;
+	private final Map<List<String>, BitSet> cache; //filter type and key -> nodes; guarded by itself
+
+	/**
+	 * Computes the bitsets of all the organism and data source values of the model.
+	 *
+	 * @param graph compiled query graph
+	 * @param model main model
+	 */
+	NodeFilters(CompactGraph graph, Model model) {
+		this.graph = graph;
+		this.cache = new LinkedHashMap<List<String>, BitSet>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<String>, BitSet> eldest) {
+				return size() > MAX_CACHED;
+			}
+		};
+
+		final long start = System.currentTimeMillis();
+		final Map<BitSet, BitSet> distinct = new HashMap<BitSet, BitSet>(); //same nodes - one bitset
+
+		final Set<String> values = new TreeSet<String>();
+		for(BioSource bs : model.getObjects(BioSource.class)) {
+			values.add(key(bs.getUri()));
+			addAll(values, bs.getName());
+			for(Xref x : bs.getXref())
+				if(x.getId() != null)
+					values.add(key(x.getId()));
+		}
+		this.organisms = precompute(true, values, distinct);
+
+		values.clear();
+		for(Provenance pro : model.getObjects(Provenance.class)) {
+			values.add(key(pro.getUri()));
+			addAll(values, pro.getName());
+			addAll(values, Arrays.asList(pro.getDisplayName(), pro.getStandardName()));
+		}
+		this.datasources = precompute(false, values, distinct);
+
+		LOG.info("NodeFilters, precomputed " + organisms.size() + " organism and "
+			+ datasources.size() + " datasource values (" + distinct.size()
+			+ " distinct bitsets) in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Gets the nodes allowed by the query parameters
+	 * (same as both the paxtools OrganismFilter and DataSourceFilter).
+	 *
+	 * @param organisms taxonomy IDs or names
+	 * @param datasources URIs or names
+	 * @return allowed nodes (a new bitset) or null (all) when there are no filters
+	 */
+	BitSet allowed(String[] organisms, String[] datasources) {
+		BitSet allowed = null;
+
+		if(organisms != null && organisms.length > 0)
+			allowed = union(true, organisms);
+
+		if(datasources != null && datasources.length > 0) {
+			final BitSet bits = union(false, datasources);
+			if(allowed == null)
+				allowed = bits;
+			else
+				allowed.and(bits);
+		}
+
+		return allowed;
+	}
+
+	/**
+	 * @return no. cached bitsets of the values not in the model
+	 */
+	int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	// the nodes that pass the filter with any of the values (a new bitset)
+	private BitSet union(boolean organism, String[] values) {
+		final BitSet union = new BitSet(graph.size());
+		for(String value : values)
+			union.or(bits(organism, value));
+		return union;
+	}
+
+	// the nodes that pass the filter with the value (the bitset must not be modified)
+	private BitSet bits(boolean organism, String value) {
+		final String key = key(value);
+		BitSet bits = ((organism) ? organisms : datasources).get(key);
+		if(bits != null)
+			return bits;
+
+		final List<String> cacheKey = Arrays.asList((organism) ? "organism" : "datasource", key);
+		synchronized (cache) {
+			bits = cache.get(cacheKey);
+		}
+		if(bits == null) {
+			// computed outside the lock (another thread might do the same, which is fine)
+			bits = graph.allowed(filter(organism, key));
+			synchronized (cache) {
+				cache.put(cacheKey, bits);
+			}
+		}
+
+		return bits;
+	}
+
+	private Map<String, BitSet> precompute(boolean organism, Collection<String> keys, Map<BitSet, BitSet> distinct) {
+		final Map<String, BitSet> map = new HashMap<String, BitSet>();
+		for(String key : keys) {
+			final BitSet bits = graph.allowed(filter(organism, key));
+			final BitSet same = distinct.get(bits);
+			if(same != null) {
+				map.put(key, same);
+			} else {
+				distinct.put(bits, bits);
+				map.put(key, bits);
+			}
+		}
+		return map;
+	}
+
+	private static Filter filter(boolean organism, String value) {
+		return (organism) ? new OrganismFilter(new String[]{value}) : new DataSourceFilter(new String[]{value});
+	}
+
+	private static void addAll(Set<String> keys, Collection<String> values) {
+		for(String v : values)
+			if(v != null)
+				keys.add(key(v));
+	}
+
+	// URIs as they are, the names and IDs in lower case (the filters ignore the case of names)
+	private static String key(String value) {
+		return (CPathUtils.isUri(value)) ? value : value.toLowerCase();
+	}
+}
@@ -0,0 +1,143 @@
+package cpath.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Entity;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Process;
+
+/**
+ * Parent (ancestor) pathways of every Entity and EntityReference in a model,
+ * computed at once, from the top pathways down, instead of walking up
+ * the pathwayComponentOf, controlledOf, participantOf, etc. graph again
+ * for each element (what ModelUtils.getParentPathways does).
+ *
+ * Elements that are in a cycle (e.g., a pathway that contains itself
+ * via a sub-pathway or control) share the same set of ancestors;
+ * equal sets are shared (interned) as well.
+ *
+ * @author rodche
+ */
+final class PathwayAncestry {
+
+	private final Map<BioPAXElement, Set<Pathway>> ancestors;
+
+	private PathwayAncestry(Map<BioPAXElement, Set<Pathway>> ancestors) {
+		this.ancestors = ancestors;
+	}
+
+	/**
+	 * Gets the parent pathways, incl. indirect ones, of a biopax object.
+	 *
+	 * @param bpe
+	 * @return unmodifiable set (empty when there are no parent pathways or the object is unknown)
+	 */
+	Set<Pathway> getParentPathways(BioPAXElement bpe) {
+		Set<Pathway> set = ancestors.get(bpe);
+		return (set != null) ? set : Collections.<Pathway>emptySet();
+	}
+
+	/**
+	 * Builds the ancestor pathway sets for all the Entity and
+	 * EntityReference objects in the model in one pass:
+	 * finds strongly connected components in the child-to-parent
+	 * graph (see {@link ComponentFinder}), which come out in the order 
+	 * parents first, and then merges the parents' (already complete) sets.
+	 *
+	 * @param model
+	 * @return
+	 */
+	static PathwayAncestry build(Model model) {
+		// number the nodes
+		final List<BioPAXElement> nodes = new ArrayList<BioPAXElement>();
+		final Map<BioPAXElement, Integer> ids = new IdentityHashMap<BioPAXElement, Integer>();
+		for(BioPAXElement bpe : model.getObjects()) {
+			if(bpe instanceof Entity || bpe instanceof EntityReference) {
+				ids.put(bpe, nodes.size());
+				nodes.add(bpe);
+			}
+		}
+
+		final int n = nodes.size();
+		final int[][] parents = new int[n][];
+		for(int i = 0; i < n; i++) {
+			Collection<BioPAXElement> ps = parents(nodes.get(i));
+			int[] a = new int[ps.size()];
+			int k = 0;
+			for(BioPAXElement p : ps) {
+				Integer j = ids.get(p);
+				if(j != null) //parent is in the model
+					a[k++] = j;
+			}
+			parents[i] = (k == a.length) ? a : Arrays.copyOf(a, k);
+		}
+
+		// strongly connected components come out in the order ancestors first
+		final int[] component = ComponentFinder.find(parents);
+		final int[][] members = ComponentFinder.members(component);
+		final List<Set<Pathway>> componentAncestors = new ArrayList<Set<Pathway>>(members.length);
+		final Map<Set<Pathway>, Set<Pathway>> interned = new HashMap<Set<Pathway>, Set<Pathway>>();
+		final Set<Pathway> empty = Collections.emptySet();
+		interned.put(empty, empty);
+
+		for(int c = 0; c < members.length; c++) {
+			// merge the parents' sets (these are either in this or in a completed component)
+			Set<Pathway> set = new HashSet<Pathway>();
+			for(int m : members[c]) {
+				for(int p : parents[m]) {
+					if(nodes.get(p) instanceof Pathway)
+						set.add((Pathway) nodes.get(p));
+					if(component[p] != c)
+						set.addAll(componentAncestors.get(component[p]));
+				}
+			}
+
+			Set<Pathway> shared = interned.get(set);
+			if(shared == null) {
+				shared = Collections.unmodifiableSet(set);
+				interned.put(shared, shared);
+			}
+			componentAncestors.add(shared);
+		}
+
+		final Map<BioPAXElement, Set<Pathway>> ancestors = new IdentityHashMap<BioPAXElement, Set<Pathway>>(n);
+		for(int i = 0; i < n; i++)
+			ancestors.put(nodes.get(i), componentAncestors.get(component[i]));
+
+		return new PathwayAncestry(ancestors);
+	}
+
+	// direct "parents" of a biopax entity or entity reference
+	private static Collection<BioPAXElement> parents(BioPAXElement bpe) {
+		final Collection<BioPAXElement> parents = new ArrayList<BioPAXElement>();
+		if(bpe instanceof Process) {
+			parents.addAll(((Process) bpe).getPathwayComponentOf());
+			parents.addAll(((Process) bpe).getControlledOf());
+		}
+		if(bpe instanceof Entity) {
+			parents.addAll(((Entity) bpe).getParticipantOf());
+		}
+		if(bpe instanceof PhysicalEntity) {
+			parents.addAll(((PhysicalEntity) bpe).getComponentOf());
+			parents.addAll(((PhysicalEntity) bpe).getMemberPhysicalEntityOf());
+		}
+		if(bpe instanceof EntityReference) {
+			parents.addAll(((EntityReference) bpe).getEntityReferenceOf());
+			parents.addAll(((EntityReference) bpe).getMemberEntityReferenceOf());
+		}
+		return parents;
+	}
+}
@@ -0,0 +1,161 @@
+package cpath.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.PathwayStep;
+import org.biopax.paxtools.model.level3.Process;
+
+/**
+ * The 'size' of every biopax Process in a model - the number of
+ * other processes it contains, directly or indirectly, i.e., same as
+ * new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter).fetch(process, Process.class).size()
+ * - but computed for all the processes at once.
+ *
+ * Child processes are those in any object property of a process (pathwayComponent,
+ * participant, controller, controlled, etc.) or of its pathwayOrder steps (stepProcess,
+ * stepConversion); other kinds of child objects cannot lead to a process; nextStep is not followed.
+ * Processes in a cycle contain each other; a process itself is not counted
+ * (even when it is in a cycle).
+ *
+ * @author rodche
+ */
+final class ProcessSizes {
+
+	private static final int[] NONE = new int[0];
+
+	private final Map<Process, Integer> sizes;
+
+	private ProcessSizes(Map<Process, Integer> sizes) {
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Gets the number of processes this one contains.
+	 *
+	 * @param process
+	 * @return size or null when the process is unknown
+	 */
+	Integer getSize(Process process) {
+		return sizes.get(process);
+	}
+
+	/**
+	 * Computes the sizes of all the processes in the model in one pass:
+	 * finds strongly connected components in the parent-to-child
+	 * graph (see {@link ComponentFinder}), which come out in the order
+	 * children first, and then merges the children's (already complete)
+	 * sets of descendants, kept as arrays of process numbers.
+	 *
+	 * @param model
+	 * @return
+	 */
+	static ProcessSizes build(Model model) {
+		// number the nodes
+		final List<Process> nodes = new ArrayList<Process>(model.getObjects(Process.class));
+		final Map<BioPAXElement, Integer> ids = new IdentityHashMap<BioPAXElement, Integer>();
+		for(int i = 0; i < nodes.size(); i++)
+			ids.put(nodes.get(i), i);
+
+		final int n = nodes.size();
+		final int[][] children = new int[n][];
+		final EditorMap editorMap = SimpleEditorMap.L3;
+		for(int i = 0; i < n; i++) {
+			List<Integer> list = new ArrayList<Integer>();
+			for(BioPAXElement child : children(nodes.get(i), editorMap)) {
+				Integer j = ids.get(child);
+				if(j != null) //child process is in the model
+					list.add(j);
+			}
+			children[i] = toArray(list);
+		}
+
+		final int[] component = ComponentFinder.find(children);
+		final int[][] members = ComponentFinder.members(component);
+		final int[][] descendants = new int[members.length][];
+		final boolean[] cyclic = new boolean[members.length]; //whether the processes contain themselves
+
+		// to merge the children's sets without duplicates
+		final int[] mark = new int[n];
+		Arrays.fill(mark, -1);
+		final List<Integer> merged = new ArrayList<Integer>();
+
+		for(int c = 0; c < members.length; c++) {
+			merged.clear();
+			for(int m : members[c]) {
+				for(int w : children[m]) {
+					if(component[w] == c) {
+						// a cycle - all the members are reachable from each other
+						cyclic[c] = true;
+						for(int x : members[c])
+							add(x, c, mark, merged);
+					} else {
+						add(w, c, mark, merged);
+						for(int x : descendants[component[w]])
+							add(x, c, mark, merged);
+					}
+				}
+			}
+			descendants[c] = toArray(merged);
+		}
+
+		final Map<Process, Integer> sizes = new IdentityHashMap<Process, Integer>(n);
+		for(int i = 0; i < n; i++) {
+			final int c = component[i];
+			sizes.put(nodes.get(i), (cyclic[c]) ? descendants[c].length - 1 : descendants[c].length);
+		}
+
+		return new ProcessSizes(sizes);
+	}
+
+	private static void add(int x, int c, int[] mark, List<Integer> merged) {
+		if(mark[x] != c) {
+			mark[x] = c;
+			merged.add(x);
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		if(list.isEmpty())
+			return NONE;
+		int[] a = new int[list.size()];
+		for(int i = 0; i < a.length; i++)
+			a[i] = list.get(i);
+		return a;
+	}
+
+	// the direct child processes, incl. those of the pathway steps
+	private static Collection<BioPAXElement> children(Process process, EditorMap editorMap) {
+		final Collection<BioPAXElement> children = new ArrayList<BioPAXElement>();
+		for(Object value : values(process, editorMap)) {
+			if(value instanceof Process) {
+				children.add((Process) value);
+			} else if(value instanceof PathwayStep) {
+				for(Object v : values((PathwayStep) value, editorMap))
+					if(v instanceof Process)
+						children.add((Process) v);
+			}
+		}
+		return children;
+	}
+
+	// object property values (except for nextStep, as Fetcher.nextStepFilter does)
+	private static Collection<Object> values(BioPAXElement bpe, EditorMap editorMap) {
+		final Collection<Object> values = new ArrayList<Object>();
+		for(PropertyEditor editor : editorMap.getEditorsOf(bpe)) {
+			if(editor instanceof ObjectPropertyEditor && !editor.getProperty().equals("nextStep"))
+				values.addAll(editor.getValueFromBean(bpe));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,318 @@
+package cpath.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Control;
+import org.biopax.paxtools.model.level3.Conversion;
+import org.biopax.paxtools.model.level3.Interaction;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.TemplateReaction;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.query.QueryExecuter;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.LimitType;
+import org.biopax.paxtools.query.model.Edge;
+import org.biopax.paxtools.query.model.Graph;
+import org.biopax.paxtools.query.model.GraphObject;
+import org.biopax.paxtools.query.model.Node;
+import org.biopax.paxtools.query.wrapperL3.Filter;
+import org.biopax.paxtools.query.wrapperL3.GraphL3;
+import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
+import org.biopax.paxtools.query.wrapperL3undirected.GraphL3Undirected;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The paxtools query graphs (directed and undirected) of the main model,
+ * with the blacklisted (ubiquitous) small molecules excluded, -
+ * built once and shared by all the graph queries, - and their
+ * compiled copies ({@link CompactGraph}), where the queries run.
+ * The organism and data source filters are applied as bitsets of the allowed nodes,
+ * precomputed per graph for every organism and data source of the model (see {@link NodeFilters}).
+ *
+ * A paxtools graph wraps the model objects lazily, which is not thread-safe;
+ * so all the nodes and edges are created in advance, by a traversal
+ * from every physical entity and interaction, and then the graphs are
+ * only read (to convert the results). The seed nodes are found
+ * in lookup-only maps (model object to node) collected at the same time
+ * rather than with {@link Graph#getGraphObject(Object)}, which would
+ * create a node for an object that is not wrapped yet.
+ *
+ * Memory (estimated): both paxtools graphs are kept (the nodes are wrapper objects
+ * with hash sets of edges, roughly 0.5-1KB per node with its edges), and each
+ * compact copy adds about 40 bytes per node (node, number and model object
+ * references, CSR offsets) plus 4 bytes per edge and equivalence link,
+ * and a seed map entry (~40 bytes) per physical entity and interaction;
+ * i.e., the copies and maps are about a tenth of the paxtools graphs.
+ * A query also needs a working memory (up to 14 int arrays of the graph size);
+ * a few of these are kept per graph for the next queries (see the 'workspaces' parameter).
+ * The graph sizes are logged when they are built.
+ *
+ * @author rodche
+ */
+final class QueryGraph {
+	private static final Logger LOG = LoggerFactory.getLogger(QueryGraph.class);
+
+	private final Graph directed;
+	private final Graph undirected;
+	private final CompactGraph compactDirected;
+	private final CompactGraph compactUndirected;
+	private final NodeFilters directedFilters;
+	private final NodeFilters undirectedFilters;
+	private final Map<BioPAXElement, Node> directedSeeds; //model object -> node (read-only)
+	private final Map<BioPAXElement, Node> undirectedSeeds;
+
+	private QueryGraph(Graph directed, CompactGraph compactDirected, NodeFilters directedFilters,
+			Map<BioPAXElement, Node> directedSeeds, Graph undirected, CompactGraph compactUndirected,
+			NodeFilters undirectedFilters, Map<BioPAXElement, Node> undirectedSeeds)
+	{
+		this.directed = directed;
+		this.undirected = undirected;
+		this.compactDirected = compactDirected;
+		this.compactUndirected = compactUndirected;
+		this.directedFilters = directedFilters;
+		this.undirectedFilters = undirectedFilters;
+		this.directedSeeds = directedSeeds;
+		this.undirectedSeeds = undirectedSeeds;
+	}
+
+	/**
+	 * Builds, initializes and compiles the graphs.
+	 *
+	 * @param model main model
+	 * @param blacklist ubiquitous molecules (can be null)
+	 * @param workspaces max. number of idle query working memories to keep per graph
+	 * @return
+	 */
+	static QueryGraph build(Model model, Blacklist blacklist, int workspaces) {
+		final Filter[] filters = (blacklist != null)
+				? new Filter[]{new UbiqueFilter(blacklist.getListed())} : new Filter[]{};
+		final Graph directed = new GraphL3(model, filters);
+		final Graph undirected = new GraphL3Undirected(model, filters);
+		final Map<BioPAXElement, Node> directedSeeds = new IdentityHashMap<BioPAXElement, Node>();
+		final Map<BioPAXElement, Node> undirectedSeeds = new IdentityHashMap<BioPAXElement, Node>();
+		final CompactGraph compactDirected = CompactGraph.build(directed,
+				initNodes(directed, model, false, directedSeeds), workspaces);
+		final CompactGraph compactUndirected = CompactGraph.build(undirected,
+				initNodes(undirected, model, true, undirectedSeeds), workspaces);
+		LOG.info("build, query graph nodes: " + compactDirected.size() + " (directed), "
+				+ compactUndirected.size() + " (undirected)");
+		return new QueryGraph(directed, compactDirected, new NodeFilters(compactDirected, model),
+				directedSeeds, undirected, compactUndirected, new NodeFilters(compactUndirected, model),
+				undirectedSeeds);
+	}
+
+	/**
+	 * Same as {@link QueryExecuter#runNeighborhood(Set, Model, int, Direction, Filter...)}.
+	 *
+	 * @param sourceSet
+	 * @param limit
+	 * @param direction
+	 * @param organisms taxonomy IDs or names (filter)
+	 * @param datasources URIs or names (filter)
+	 * @return
+	 */
+	Set<BioPAXElement> runNeighborhood(Set<BioPAXElement> sourceSet, int limit, Direction direction,
+			String[] organisms, String[] datasources)
+	{
+		final Graph graph;
+		final CompactGraph compact;
+		final Map<BioPAXElement, Node> seeds;
+		final BitSet allowed;
+		if(direction == Direction.UNDIRECTED) {
+			graph = undirected;
+			compact = compactUndirected;
+			seeds = undirectedSeeds;
+			allowed = undirectedFilters.allowed(organisms, datasources);
+			direction = Direction.BOTHSTREAM;
+		} else {
+			graph = directed;
+			compact = compactDirected;
+			seeds = directedSeeds;
+			allowed = directedFilters.allowed(organisms, datasources);
+		}
+
+		final int[] source = compact.numbers(singleNodeSet(sourceSet, seeds), allowed);
+		if(source.length == 0)
+			return Collections.emptySet();
+
+		return QueryExecuter.convertQueryResult(
+				compact.neighborhood(source, direction, limit, allowed), graph, true);
+	}
+
+	/**
+	 * Same as {@link QueryExecuter#runPathsBetween(Set, Model, int, Filter...)}.
+	 *
+	 * @param sourceSet
+	 * @param limit
+	 * @param organisms taxonomy IDs or names (filter)
+	 * @param datasources URIs or names (filter)
+	 * @return
+	 */
+	Set<BioPAXElement> runPathsBetween(Set<BioPAXElement> sourceSet, int limit,
+			String[] organisms, String[] datasources)
+	{
+		final BitSet allowed = directedFilters.allowed(organisms, datasources);
+		final List<int[]> sources = nodeSets(sourceSet, allowed);
+		if(sources.size() < 2)
+			return Collections.emptySet();
+
+		return QueryExecuter.convertQueryResult(
+				compactDirected.pathsBetween(sources, limit, allowed), directed, true);
+	}
+
+	/**
+	 * Same as {@link QueryExecuter#runPathsFromTo(Set, Set, Model, LimitType, int, Filter...)}
+	 * with LimitType.NORMAL.
+	 *
+	 * @param sourceSet
+	 * @param targetSet
+	 * @param limit
+	 * @param organisms taxonomy IDs or names (filter)
+	 * @param datasources URIs or names (filter)
+	 * @return
+	 */
+	Set<BioPAXElement> runPathsFromTo(Set<BioPAXElement> sourceSet, Set<BioPAXElement> targetSet,
+			int limit, String[] organisms, String[] datasources)
+	{
+		final BitSet allowed = directedFilters.allowed(organisms, datasources);
+		final int[] source = compactDirected.numbers(singleNodeSet(sourceSet, directedSeeds), allowed);
+		final int[] target = compactDirected.numbers(singleNodeSet(targetSet, directedSeeds), allowed);
+		if(source.length == 0 || target.length == 0)
+			return Collections.emptySet();
+
+		return QueryExecuter.convertQueryResult(
+				compactDirected.pathsFromTo(source, target, limit, allowed), directed, true);
+	}
+
+	/**
+	 * Same as {@link QueryExecuter#runCommonStreamWithPOI(Set, Model, Direction, int, Filter...)}.
+	 *
+	 * @param sourceSet
+	 * @param direction
+	 * @param limit
+	 * @param organisms taxonomy IDs or names (filter)
+	 * @param datasources URIs or names (filter)
+	 * @return
+	 */
+	Set<BioPAXElement> runCommonStreamWithPOI(Set<BioPAXElement> sourceSet, Direction direction, int limit,
+			String[] organisms, String[] datasources)
+	{
+		final BitSet allowed = directedFilters.allowed(organisms, datasources);
+		final List<int[]> sources = nodeSets(sourceSet, allowed);
+		if(sources.size() < 2)
+			return Collections.emptySet();
+
+		return QueryExecuter.convertQueryResult(
+				compactDirected.commonStreamWithPOI(sources, direction, limit, allowed), directed, true);
+	}
+
+	// seed node sets (one per source element) in the directed graph, same as
+	// QueryExecuter.prepareNodeSets; empty ones are skipped
+	private List<int[]> nodeSets(Set<BioPAXElement> sourceSet, BitSet allowed) {
+		final Set<Set<Node>> nodeSets = new HashSet<Set<Node>>();
+		for(Set<PhysicalEntity> pes : QueryExecuter.getRelatedPhysicalEntityMap(sourceSet).values()) {
+			final Set<Node> set = nodes(pes, directedSeeds);
+			if(!set.isEmpty())
+				nodeSets.add(set);
+		}
+		for(Node node : seedInteractions(sourceSet, directedSeeds))
+			nodeSets.add(Collections.singleton(node));
+
+		final List<int[]> sets = new ArrayList<int[]>();
+		for(Set<Node> set : nodeSets) {
+			final int[] a = compactDirected.numbers(set, allowed);
+			if(a.length > 0)
+				sets.add(a);
+		}
+		return sets;
+	}
+
+	// same as QueryExecuter.prepareSingleNodeSet, but the graph is not used
+	private static Set<Node> singleNodeSet(Set<BioPAXElement> elements, Map<BioPAXElement, Node> seeds) {
+		final Set<PhysicalEntity> pes = new HashSet<PhysicalEntity>();
+		for(Set<PhysicalEntity> set : QueryExecuter.getRelatedPhysicalEntityMap(elements).values())
+			pes.addAll(set);
+		final Set<Node> nodes = nodes(pes, seeds);
+		nodes.addAll(seedInteractions(elements, seeds));
+		return nodes;
+	}
+
+	private static Set<Node> nodes(Collection<? extends BioPAXElement> elements, Map<BioPAXElement, Node> seeds) {
+		final Set<Node> nodes = new HashSet<Node>();
+		for(BioPAXElement e : elements) {
+			final Node node = seeds.get(e);
+			if(node != null)
+				nodes.add(node);
+		}
+		return nodes;
+	}
+
+	// the interactions in the seed (same types as the paxtools query accepts)
+	private static Set<Node> seedInteractions(Collection<BioPAXElement> elements, Map<BioPAXElement, Node> seeds) {
+		final Set<BioPAXElement> interactions = new HashSet<BioPAXElement>();
+		for(BioPAXElement e : elements)
+			if(e instanceof Conversion || e instanceof TemplateReaction || e instanceof Control)
+				interactions.add(e);
+		return nodes(interactions, seeds);
+	}
+
+	/*
+	 * Wraps all the physical entities and interactions (that the graph can wrap),
+	 * collecting them in the seeds map, and then visits every node reachable from those,
+	 * which makes the graph create and initialize the rest of the nodes and edges
+	 * (otherwise created on demand).
+	 */
+	private static List<Node> initNodes(Graph graph, Model model, boolean anyInteraction,
+			Map<BioPAXElement, Node> seeds)
+	{
+		final Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		final List<Node> nodes = new ArrayList<Node>();
+		final Deque<Node> queue = new ArrayDeque<Node>();
+
+		for(BioPAXElement e : model.getObjects()) {
+			if(e instanceof PhysicalEntity
+				|| (anyInteraction && e instanceof Interaction)
+				|| e instanceof Conversion || e instanceof Control || e instanceof TemplateReaction)
+			{
+				final GraphObject go = graph.getGraphObject(e);
+				if(go instanceof Node)
+					seeds.put(e, (Node) go);
+				visit(go, visited, nodes, queue);
+			}
+		}
+
+		while(!queue.isEmpty()) {
+			final Node node = queue.poll();
+			for(Edge edge : node.getUpstream())
+				visit(edge.getSourceNode(), visited, nodes, queue);
+			for(Edge edge : node.getDownstream())
+				visit(edge.getTargetNode(), visited, nodes, queue);
+			for(Node equivalent : node.getUpperEquivalent())
+				visit(equivalent, visited, nodes, queue);
+			for(Node equivalent : node.getLowerEquivalent())
+				visit(equivalent, visited, nodes, queue);
+		}
+
+		return nodes;
+	}
+
+	private static void visit(GraphObject go, Set<Node> visited, Collection<Node> nodes, Deque<Node> queue) {
+		if(go instanceof Node && visited.add((Node) go)) {
+			nodes.add((Node) go);
+			queue.add((Node) go);
+		}
+	}
+}
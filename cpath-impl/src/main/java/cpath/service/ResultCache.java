@@ -0,0 +1,205 @@
+package cpath.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.jaxb.DataResponse;
+
+/**
+ * A thread-safe LRU cache of (converted) query result files,
+ * bounded by the total size of the files in the cache directory.
+ *
+ * A cached result is returned as a new hard link to the file (or a copy,
+ * if links are not supported), because the web controller deletes
+ * the result file after it's sent to the client.
+ *
+ * The files are kept in a sub-directory of the cache directory
+ * (which other components share), and only the files named
+ * the way this class names them are ever deleted there.
+ *
+ * @author rodche
+ */
+final class ResultCache {
+	private static final Logger LOG = LoggerFactory.getLogger(ResultCache.class);
+
+	/**
+	 * The sub-directory (of the cache directory) where the result files are kept.
+	 */
+	static final String SUBDIR = "results";
+
+	// names of the files this cache creates: a number and the extension of the original file
+	private static final Pattern FILE_NAME = Pattern.compile("\\d+(\\.[^.]*)?");
+
+	private final File dir;
+	private final long maxBytes;
+	private final Map<String, Entry> entries; //in the access order
+	private long bytes; //total size of the cached files
+	private final AtomicLong seq = new AtomicLong(); //to name the files
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static final class Entry {
+		final File file;
+		final long size;
+		final DataResponse response; //format, providers (data is not used)
+
+		Entry(File file, long size, DataResponse response) {
+			this.file = file;
+			this.size = size;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * The {@link #SUBDIR} sub-directory is created, or the result files
+	 * from the previous run are deleted from it; other files are not touched.
+	 *
+	 * @param cacheDir cache directory
+	 * @param maxBytes max. total size of the cached files
+	 */
+	ResultCache(File cacheDir, long maxBytes) {
+		if(maxBytes <= 0)
+			throw new IllegalArgumentException("maxBytes must be greater than zero");
+		this.dir = new File(cacheDir, SUBDIR);
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		if(dir.isDirectory()) {
+			for(File f : dir.listFiles())
+				if(f.isFile() && FILE_NAME.matcher(f.getName()).matches())
+					f.delete();
+		} else if(!dir.mkdirs()) {
+			LOG.warn("ResultCache, failed to create " + dir.getPath());
+		}
+	}
+
+	/**
+	 * Gets the cached result.
+	 *
+	 * @param key normalized request
+	 * @return new data response (the file can be deleted when done) or null when not found
+	 */
+	synchronized DataResponse get(String key) {
+		final Entry e = entries.get(key);
+		if(e != null) {
+			try {
+				final Path out = newFile(e.file).toPath();
+				try {
+					Files.createLink(out, e.file.toPath());
+				} catch (UnsupportedOperationException ex) {
+					Files.copy(e.file.toPath(), out);
+				}
+				DataResponse dr = new DataResponse();
+				dr.setFormat(e.response.getFormat());
+				dr.setProviders(e.response.getProviders());
+				dr.setData(out);
+				hits.incrementAndGet();
+				return dr;
+			} catch (IOException ex) {
+				LOG.warn("get, failed to link or copy " + e.file.getPath() + ": " + ex);
+				remove(key);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Saves a copy of the data response file (the response itself is not changed),
+	 * unless the file is larger than the cache; evicts the least recently used
+	 * results to fit in the size budget.
+	 *
+	 * @param key normalized request
+	 * @param dataResponse (the data must be a file Path)
+	 */
+	void put(String key, DataResponse dataResponse) {
+		if(!(dataResponse.getData() instanceof Path))
+			return;
+		final File src = ((Path) dataResponse.getData()).toFile();
+		final long size = src.length();
+		if(size > maxBytes)
+			return;
+
+		// copy the file outside the lock
+		final File file = newFile(src);
+		try {
+			Files.copy(src.toPath(), file.toPath());
+		} catch (IOException e) {
+			LOG.warn("put, failed to copy " + src.getPath() + ": " + e);
+			file.delete();
+			return;
+		}
+
+		DataResponse dr = new DataResponse();
+		dr.setFormat(dataResponse.getFormat());
+		dr.setProviders(dataResponse.getProviders());
+		synchronized (this) {
+			remove(key); //the same result might have been just put by another thread
+			entries.put(key, new Entry(file, size, dr));
+			bytes += size;
+			Iterator<Entry> it = entries.values().iterator();
+			while(bytes > maxBytes && it.hasNext()) {
+				Entry eldest = it.next();
+				it.remove();
+				bytes -= eldest.size;
+				eldest.file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the results (e.g., when the model changes).
+	 */
+	synchronized void clear() {
+		for(Entry e : entries.values())
+			e.file.delete();
+		entries.clear();
+		bytes = 0;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	private synchronized void remove(String key) {
+		final Entry e = entries.remove(key);
+		if(e != null) {
+			bytes -= e.size;
+			e.file.delete();
+		}
+	}
+
+	// a new unique file in the cache dir, with the same extension as the file
+	private File newFile(File file) {
+		final String name = file.getName();
+		final int i = name.lastIndexOf('.');
+		return new File(dir, seq.incrementAndGet() + ((i > 0) ? name.substring(i) : ""));
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "entries: " + entries.size() + ", bytes: " + bytes + ", hits: " + hits + ", misses: " + misses;
+	}
+}
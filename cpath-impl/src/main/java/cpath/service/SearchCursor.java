@@ -0,0 +1,129 @@
+package cpath.service;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Search results cursor: the last hit of a page
+ * and the index (reader) generation the hit came from.
+ *
+ * Clients get it as an opaque string with a search response
+ * and pass it back to get the next page of hits, which then costs
+ * a single bounded collection (Lucene 'searchAfter')
+ * regardless of how deep the page is.
+ *
+ * @author rodche
+ */
+final class SearchCursor {
+
+	private static final String SEPARATOR = ".";
+	private static final int RADIX = 36;
+
+	private final long generation;
+	private final int page;
+	private final int doc;
+	private final float score;
+	private final Long size; //the sort value, when listing hits are sorted by size, or null
+
+	/**
+	 * Constructor.
+	 *
+	 * @param generation index reader version
+	 * @param page hits page number the last doc belongs to
+	 * @param lastDoc the last hit on the page
+	 */
+	SearchCursor(long generation, int page, ScoreDoc lastDoc) {
+		this(generation, page, lastDoc.doc, lastDoc.score, sizeValue(lastDoc));
+	}
+
+	private SearchCursor(long generation, int page, int doc, float score, Long size) {
+		this.generation = generation;
+		this.page = page;
+		this.doc = doc;
+		this.score = score;
+		this.size = size;
+	}
+
+	// the first sort value of a hit sorted by (size, doc)
+	private static Long sizeValue(ScoreDoc lastDoc) {
+		if(lastDoc instanceof FieldDoc) {
+			Object[] fields = ((FieldDoc) lastDoc).fields;
+			if(fields != null && fields.length == 2 && fields[0] instanceof Long)
+				return (Long) fields[0];
+		}
+		return null;
+	}
+
+	long getGeneration() {
+		return generation;
+	}
+
+	int getPage() {
+		return page;
+	}
+
+	ScoreDoc getScoreDoc() {
+		return new ScoreDoc(doc, score);
+	}
+
+	/**
+	 * @return whether the hits were sorted by size (and then doc)
+	 */
+	boolean isSortedBySize() {
+		return size != null;
+	}
+
+	/**
+	 * The last hit with the sort values, when hits are sorted
+	 * in the index order ({@link org.apache.lucene.search.Sort#INDEXORDER})
+	 * or by size and then doc.
+	 *
+	 * @return last doc with its sort field values
+	 */
+	FieldDoc getFieldDoc() {
+		return (size != null) 
+			? new FieldDoc(doc, score, new Object[]{size, Integer.valueOf(doc)})
+				: new FieldDoc(doc, score, new Object[]{Integer.valueOf(doc)});
+	}
+
+	/**
+	 * Encodes the cursor to a short URL-safe string.
+	 *
+	 * @return opaque cursor string
+	 */
+	String encode() {
+		return Long.toString(generation, RADIX)
+			+ SEPARATOR + Integer.toString(page, RADIX)
+			+ SEPARATOR + Integer.toString(doc, RADIX)
+			+ SEPARATOR + Integer.toString(Float.floatToIntBits(score), RADIX)
+			+ ((size != null) ? SEPARATOR + Long.toString(size, RADIX) : "");
+	}
+
+	/**
+	 * Decodes the cursor string.
+	 *
+	 * @param cursor string previously created by {@link #encode()}
+	 * @return search cursor
+	 * @throws IllegalArgumentException when the string is not a valid cursor
+	 */
+	static SearchCursor decode(String cursor) {
+		String[] parts = (cursor != null) ? cursor.trim().split("\\" + SEPARATOR) : new String[]{};
+		if(parts.length != 4 && parts.length != 5)
+			throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+		try {
+			return new SearchCursor(
+				Long.parseLong(parts[0], RADIX),
+				Integer.parseInt(parts[1], RADIX),
+				Integer.parseInt(parts[2], RADIX),
+				Float.intBitsToFloat(Integer.parseInt(parts[3], RADIX)),
+				(parts.length == 5) ? Long.valueOf(parts[4], RADIX) : null);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid search cursor: " + cursor, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+}
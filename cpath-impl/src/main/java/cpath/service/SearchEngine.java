@@ -1,52 +1,94 @@
 package cpath.service;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.Version;
 import org.biopax.paxtools.controller.*;
 import org.biopax.paxtools.model.BioPAXElement;
@@ -68,13 +110,16 @@ import cpath.service.jaxb.SearchResponse;
  *
  * @author rodche
  */
-public class SearchEngine implements Indexer, Searcher {
+public class SearchEngine implements Indexer, Searcher, Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(SearchEngine.class);
 	
 	// search fields
 	public static final String FIELD_URI = "uri";
 	public static final String FIELD_KEYWORD = "keyword"; //anything, e.g., names, terms, comments, incl. - from child elements 
 	public static final String FIELD_NAME = "name"; // standardName, displayName, other names
+	//same as 'keyword' and 'name' but with reversed tokens (not stored), to quickly run leading wildcard queries
+	public static final String FIELD_KEYWORD_REV = "keyword_rev";
+	public static final String FIELD_NAME_REV = "name_rev";
 //	public static final String FIELD_XREFDB = "xrefdb"; //xref.db
 	public static final String FIELD_XREFID = "xrefid"; //xref.id
 	public static final String FIELD_PATHWAY = "pathway"; //pathways and parent pathways to be inferred from entire biopax model
@@ -86,6 +131,8 @@ public class SearchEngine implements Indexer, Searcher {
 	//index data source names, but only URIs are stored in the index
 	public static final String FIELD_DATASOURCE = "datasource";
 	public static final String FIELD_TYPE = "type";
+	//the biopax class and all its super-interfaces (names in lower case), to filter by type with a single term
+	public static final String FIELD_TYPEALL = "typeall";
 	
 	//Default fields to use with the MultiFieldQueryParser;
 	//one can still search in other fields directly, e.g.,
@@ -99,13 +146,77 @@ public class SearchEngine implements Indexer, Searcher {
 						  //also from  child elements up to given depth (3), also stores but not indexes parent pathway uris and names;
 	};
 		
+	//stored fields to load (only) for the highlighter
+	private static final Set<String> KEYWORD_FIELD_TO_LOAD = Collections.singleton(FIELD_KEYWORD);
+		
 	private final Model model;
 	private int maxHitsPerPage;
+	private long searchTimeLimit; //ms
+	private Counter searchClock; //ms, for the search time limit (the global timer thread's)
+	private boolean listingBySize; //q="*" hits order: by size (desc.) or index order
 	private final Analyzer analyzer;
 	private final File indexFile;
-	private SearcherManager searcherManager;
+	private volatile SearcherManager searcherManager;
+	private volatile String buildId; //of the index that is currently used
+	private volatile String indexProblem; //why the index cannot be used (built by an older version)
+	private volatile long indexVersion = -1L; //of the current index reader
+	private final AtomicLong lastIndexCheck;
+	private long indexCheckInterval;
+	private final ExecutorService indexSwitcher; //switches to the changed index in the background
+	private volatile List<String> warmupQueries; //to run on each new index searcher
+	private volatile boolean preload; //read all the index files before the warm-up
+	private volatile IdResolver idResolver; //identifier -> URIs of physical entities and genes
+	private volatile boolean reversedFields; //whether the index has got the *_rev fields for all docs
+	private volatile Suggester suggester; //type-ahead suggestions
+	private int indexThreads;
+	private double ramBufferSizeMB;
+	private volatile Map<String, Set<String>> otherIds; //by URI; more IDs to index (e.g., from id-mapping)
+	
+	//filters by (type, datasources, organisms) - bound to the index reader version
+	private final LruCache<String, Filter> filterCache;
+	private volatile long filterCacheGeneration = -1L;
 
 	public final static int DEFAULT_MAX_HITS_PER_PAGE = 100;
+	//listing order: larger pathways/interactions first (no size - as zero), then the index order
+	private final static Sort SIZE_ORDER = new Sort(
+		new SortField(FIELD_SIZE, SortField.Type.LONG, true), SortField.FIELD_DOC);
+	public final static int DEFAULT_FILTER_CACHE_SIZE = 100;
+	public final static double DEFAULT_RAM_BUFFER_SIZE_MB = 256.0;
+	public final static long DEFAULT_INDEX_CHECK_INTERVAL_MS = 60000L;
+	//commit user data key: unique id of the index build/update
+	public final static String BUILD_ID = "cpath2.index.build";
+	//the new index is built in a side directory and then replaces the current one, which is kept as backup
+	private final static String NEW_INDEX_SUFFIX = ".new";
+	private final static String OLD_INDEX_SUFFIX = ".old";
+	//previous backups (might be still open by another process) get this suffix + time and are deleted later
+	private final static String RETIRED_INDEX_SUFFIX = ".old.";
+	//no. biopax elements to prepare and index per task
+	private final static int INDEX_BATCH_SIZE = 1000;
+	//how deep to go into child elements to collect keywords
+	private final static int KEYWORD_DEPTH = 4;
+	//max. number of memoized keyword arrays of child elements (per indexing run)
+	private final static int KEYWORD_MEMO_SIZE = 1000000;
+	
+	//to include in the index, as keywords, only the following properties
+	// (basically, to exclude float type properties, embedded xml, db names, etc.):
+	final static org.biopax.paxtools.util.Filter<DataPropertyEditor> KEYWORD_PROPERTIES
+		= new org.biopax.paxtools.util.Filter<DataPropertyEditor>() {
+		@Override
+		public boolean filter(DataPropertyEditor editor) {
+			final String prop = editor.getProperty();
+			return (prop.equalsIgnoreCase("author") || prop.equalsIgnoreCase("availability")
+					|| prop.equalsIgnoreCase("chemicalFormula") || prop.equalsIgnoreCase("comment")
+					|| prop.equalsIgnoreCase("controlType") || prop.equalsIgnoreCase("conversionDirection")
+					|| prop.equalsIgnoreCase("eCNumber") || prop.equalsIgnoreCase("id")
+					|| prop.equalsIgnoreCase("name") || prop.equalsIgnoreCase("displayName")
+					|| prop.equalsIgnoreCase("standardName") || prop.equalsIgnoreCase("sequence")
+					|| prop.equalsIgnoreCase("source") || prop.equalsIgnoreCase("year")
+					|| prop.equalsIgnoreCase("term") || prop.equalsIgnoreCase("stepDirection")
+					|| prop.equalsIgnoreCase("structureData") || prop.equalsIgnoreCase("templateDirection")
+					|| prop.equalsIgnoreCase("title") || prop.equalsIgnoreCase("url")
+			);
+		}
+	};
 
 	/**
 	 * Constructor.
@@ -118,20 +229,406 @@ public class SearchEngine implements Indexer, Searcher {
 		this.indexFile = new File(indexLocation);
 		initSearcherManager();
 		this.maxHitsPerPage = DEFAULT_MAX_HITS_PER_PAGE;
-		this.analyzer = new StandardAnalyzer();
+		this.searchTimeLimit = CPathSettings.DEFAULT_SEARCH_TIME_LIMIT_MS;
+		this.searchClock = TimeLimitingCollector.getGlobalCounter();
+		this.analyzer = new ReversingAnalyzer(new StandardAnalyzer());
+		this.filterCache = new LruCache<String, Filter>(DEFAULT_FILTER_CACHE_SIZE);
+		this.indexThreads = Runtime.getRuntime().availableProcessors();
+		this.otherIds = Collections.emptyMap();
+		this.ramBufferSizeMB = DEFAULT_RAM_BUFFER_SIZE_MB;
+		this.indexCheckInterval = DEFAULT_INDEX_CHECK_INTERVAL_MS;
+		this.lastIndexCheck = new AtomicLong(System.currentTimeMillis());
+		this.indexSwitcher = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, 
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "index-switch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
 	}
 
 	private void initSearcherManager() {
 		try {
-			if(indexFile.exists()) 
-				this.searcherManager = 
-					new SearcherManager(MMapDirectory.open(indexFile), new SearcherFactory());
+			if(indexFile.exists()) {
+				SearcherManager sm = new SearcherManager(MMapDirectory.open(indexFile), searcherFactory());
+				IndexSearcher searcher = sm.acquire();
+				final String problem;
+				try {
+					problem = checkFormat(searcher.getIndexReader());
+					if(problem == null) {
+						this.buildId = ((DirectoryReader) searcher.getIndexReader())
+							.getIndexCommit().getUserData().get(BUILD_ID);
+						this.indexVersion = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+						this.reversedFields = hasReversedFields(searcher.getIndexReader());
+					}
+				} finally {
+					sm.release(searcher);
+				}
+				if(problem != null) {
+					sm.close();
+					this.indexProblem = problem;
+					LOG.error(problem);
+					return;
+				}
+				this.indexProblem = null;
+				this.searcherManager = sm;
+				try {
+					this.idResolver = IdResolver.read(indexFile);
+				} catch (IOException e) {
+					this.idResolver = null;
+					LOG.warn("Could not load the id resolver (will use the full-text search instead): " + e);
+				}
+				try {
+					this.suggester = Suggester.open(indexFile, analyzer);
+				} catch (IOException e) {
+					this.suggester = null;
+					LOG.warn("Could not open the suggester: " + e);
+				}
+			}
 			else 
 				LOG.info(indexFile.getPath() + " does not exist.");
 		} catch (IOException e) {
 			LOG.warn("Could not create a searcher: " + e);
 		}
 	}
+
+	/*
+	 * Opens the (new) index and then closes the previous searcher manager;
+	 * searches in progress continue using the old index reader, which 
+	 * gets closed after all its searchers are released (to the manager 
+	 * they were acquired from).
+	 */
+	private synchronized void switchSearcherManager() {
+		final SearcherManager old = searcherManager;
+		final Suggester oldSuggester = suggester;
+		if(warmupQueries != null && preload)
+			preload(indexFile);
+		initSearcherManager();
+		if(old != null && old != searcherManager) {
+			try {
+				old.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close the previous searcher manager: " + e);
+			}
+		}
+		closeSuggester(oldSuggester);
+		filterCache.clear();
+		LOG.info("Using the index " + indexFile.getPath() + ", build: " + buildId);
+	}
+
+	/**
+	 * Closes the index searcher (once the searches in progress release it)
+	 * and the suggester, and stops the background index switching;
+	 * this search engine cannot be used afterwards.
+	 */
+	@Override
+	public synchronized void close() {
+		indexSwitcher.shutdown();
+		final SearcherManager sm = searcherManager;
+		searcherManager = null;
+		indexProblem = "The search engine is closed: " + indexFile.getPath();
+		if(sm != null) {
+			try {
+				sm.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close the searcher manager: " + e);
+			}
+		}
+		final Suggester old = suggester;
+		suggester = null;
+		closeSuggester(old);
+	}
+
+	// the BioPAX model this engine indexes and searches
+	Model getModel() {
+		return model;
+	}
+
+	// switches to the index build unless it's already used (another thread could do that)
+	private synchronized void switchSearcherManager(String id) {
+		if(!id.equals(buildId)) {
+			LOG.info("The index " + indexFile.getPath() + " has changed (build: " + id + ")");
+			switchSearcherManager();
+		}
+	}
+
+	/*
+	 * Acquires the current index searcher (must be released afterwards,
+	 * see Lease.release); but first - once in a while - checks whether the index 
+	 * has been replaced or updated (by another process).
+	 */
+	private Lease acquire() throws IOException {
+		checkIndex();
+		
+		while(true) {
+			final SearcherManager sm = searcherManager;
+			if(sm == null)
+				throw new IllegalStateException((indexProblem != null) 
+					? indexProblem : "There is no index: " + indexFile.getPath());
+			try {
+				return new Lease(sm, sm.acquire());
+			} catch (AlreadyClosedException e) {
+				if(sm == searcherManager)
+					throw e;
+				//it's been just switched to a new one; try again
+			}
+		}
+	}
+
+	/*
+	 * Once in a while (only one thread per interval), checks whether the index
+	 * has been replaced or updated (by another process); if so, the switch 
+	 * to it is done in the background (requests continue using the current one).
+	 */
+	private void checkIndex() {
+		final long now = System.currentTimeMillis();
+		final long last = lastIndexCheck.get();
+		if(now - last >= indexCheckInterval && lastIndexCheck.compareAndSet(last, now)) {
+			final String id = readBuildId(indexFile);
+			if(id != null && !id.equals(buildId) && !indexSwitcher.isShutdown()) {
+				indexSwitcher.execute(new Runnable() {
+					@Override
+					public void run() {
+						switchSearcherManager(id);
+					}
+				});
+			}
+		}
+	}
+
+	/*
+	 * An index searcher and the searcher manager it was acquired from,
+	 * where it must be released (the current manager might be another one by then).
+	 */
+	private static final class Lease {
+		final SearcherManager manager;
+		final IndexSearcher searcher;
+
+		Lease(SearcherManager manager, IndexSearcher searcher) {
+			this.manager = manager;
+			this.searcher = searcher;
+		}
+
+		void release() {
+			try {
+				manager.release(searcher);
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Finds the URIs of physical entities and genes associated with the identifiers,
+	 * using the id resolver built along with the index or, if there is none 
+	 * (older index), the 'xrefid' field.
+	 * 
+	 * @param identifiers biological identifiers (case-insensitive)
+	 * @return URIs
+	 */
+	public Set<String> findUrisByIds(Collection<String> identifiers) {
+		final Set<String> uris = new HashSet<String>();
+		final IdResolver resolver = idResolver;
+		if(resolver != null) {
+			for(String id : identifiers)
+				resolver.resolve(id, uris);
+			return uris;
+		}
+		
+		// the same using the full-text index (at most 1024 clauses per query)
+		final List<String> ids = new ArrayList<String>(identifiers);
+		for(int i = 0; i < ids.size(); i += 1000) {
+			BooleanQuery idsQuery = new BooleanQuery();
+			for(String id : ids.subList(i, Math.min(i + 1000, ids.size())))
+				idsQuery.add(new TermQuery(new Term(FIELD_XREFID, id.toLowerCase())), Occur.SHOULD);
+			BooleanQuery typesQuery = new BooleanQuery();
+			typesQuery.add(typeQuery(PhysicalEntity.class), Occur.SHOULD);
+			typesQuery.add(typeQuery(Gene.class), Occur.SHOULD);
+			BooleanQuery query = new BooleanQuery();
+			query.add(idsQuery, Occur.MUST);
+			query.add(typesQuery, Occur.MUST);
+			
+			Lease lease = null;
+			try {
+				lease = acquire();
+				final IndexSearcher searcher = lease.searcher;
+				searcher.search(query, new UriCollector(uris));
+			} catch (IOException e) {
+				throw new RuntimeException("findUrisByIds: failed: " + e);
+			} finally {
+				if(lease != null)
+					lease.release();
+			}
+		}
+		
+		return uris;
+	}
+
+	/**
+	 * Re-opens the index with a searcher factory that runs the warm-up queries 
+	 * (and loads the doc values) on every new index searcher before it is used - 
+	 * also after the index is updated or replaced; optionally, first preloads
+	 * the index files (see {@link #setPreload(boolean)}).
+	 * Returns when the current index searcher is ready.
+	 * 
+	 * @param queries representative search queries (Lucene syntax or "*")
+	 */
+	public void warmUp(Collection<String> queries) {
+		final long start = System.currentTimeMillis();
+		this.warmupQueries = Collections.unmodifiableList(new ArrayList<String>(queries));
+		switchSearcherManager();
+		LOG.info("warmUp(), done in " + (System.currentTimeMillis() - start) 
+				+ " ms, using " + queries.size() + " queries");
+	}
+
+	private SearcherFactory searcherFactory() {
+		return (warmupQueries == null) ? new SearcherFactory() : new WarmingSearcherFactory(warmupQueries);
+	}
+
+	/*
+	 * Runs the queries (as the search method does, incl. highlighting)
+	 * and collects the facet doc values with a new searcher before it's used.
+	 */
+	private final class WarmingSearcherFactory extends SearcherFactory {
+		private final List<String> queries;
+
+		WarmingSearcherFactory(List<String> queries) {
+			this.queries = queries;
+		}
+
+		@Override
+		public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+			final long start = System.currentTimeMillis();
+			final IndexSearcher searcher = new IndexSearcher(reader);
+			for(String q : queries) {
+				try {
+					Query query = createQuery(q, null);
+					transform(query, searcher, !isAllQuery(q), searcher.search(query, maxHitsPerPage));
+				} catch (ParseException e) {
+					LOG.warn("Skipped a bad warm-up query: " + q);
+				}
+			}
+			searcher.search(new MatchAllDocsQuery(), new FacetCounter());
+			LOG.info("Warmed up a new index searcher in " + (System.currentTimeMillis() - start) + " ms");
+			return searcher;
+		}
+	}
+
+	// reads all the files in the directory, so that the OS caches them
+	private static void preload(File dir) {
+		final File[] files = dir.listFiles();
+		if(files == null)
+			return;
+		
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20); //no copying to the heap
+		long bytes = 0;
+		for(File f : files) {
+			if(!f.isFile())
+				continue;
+			FileInputStream is = null;
+			try {
+				is = new FileInputStream(f);
+				FileChannel channel = is.getChannel();
+				int n;
+				while((n = channel.read(buffer)) > 0) {
+					bytes += n;
+					buffer.clear();
+				}
+			} catch (IOException e) {
+				LOG.warn("Failed to preload " + f.getPath() + ": " + e);
+			} finally {
+				try {
+					if(is != null)
+						is.close();
+				} catch (IOException e) {}
+			}
+		}
+		LOG.info("Preloaded " + bytes + " bytes of the index files in " + dir.getPath());
+	}
+
+	/*
+	 * An index built by an older version, without the 'uri' doc values
+	 * or the 'typeall' field (for every doc), is not used at all
+	 * (rather than giving errors or wrong results on some queries).
+	 * 
+	 * @return the problem or null when the index can be used
+	 */
+	private String checkFormat(IndexReader reader) throws IOException {
+		boolean ok = docCount(reader, FIELD_TYPEALL) == reader.maxDoc();
+		for(AtomicReaderContext leaf : reader.leaves()) {
+			if(leaf.reader().maxDoc() > 0 && leaf.reader().getBinaryDocValues(FIELD_URI) == null)
+				ok = false;
+		}
+		return (ok) ? null : "The index " + indexFile.getPath() + " was built by an older version " +
+			"(no '" + FIELD_URI + "' doc values or '" + FIELD_TYPEALL + "' field); re-index is required";
+	}
+
+	/*
+	 * Whether every doc that has 'keyword' or 'name' terms also has 
+	 * the reversed tokens fields (an index built by an older version 
+	 * does not have them; so leading wildcard queries are not rewritten).
+	 */
+	private static boolean hasReversedFields(IndexReader reader) throws IOException {
+		return docCount(reader, FIELD_KEYWORD) == docCount(reader, FIELD_KEYWORD_REV)
+			&& docCount(reader, FIELD_NAME) == docCount(reader, FIELD_NAME_REV);
+	}
+
+	private static int docCount(IndexReader reader, String field) throws IOException {
+		Terms terms = MultiFields.getTerms(reader, field);
+		return (terms != null) ? terms.getDocCount() : 0;
+	}
+
+	private void closeSuggester(Suggester old) {
+		if(old != null && old != suggester) {
+			try {
+				old.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close the previous suggester: " + e);
+			}
+		}
+	}
+
+	// gets the build id of the last commit in the index directory (null when none or failed)
+	private static String readBuildId(File dir) {
+		if(!dir.exists())
+			return null;
+		
+		Directory directory = null;
+		try {
+			directory = FSDirectory.open(dir);
+			if(!DirectoryReader.indexExists(directory))
+				return null;
+			List<IndexCommit> commits = DirectoryReader.listCommits(directory);
+			return commits.get(commits.size()-1).getUserData().get(BUILD_ID);
+		} catch (IOException e) {
+			LOG.debug("Failed to read the index build id: " + e);
+			return null;
+		} finally {
+			try {
+				if(directory != null)
+					directory.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	private static String newBuildId() {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Sets how often (at most) to check whether the index has been 
+	 * replaced or updated by another process, e.g., by the admin tool,
+	 * in order to switch to the new index without restarting the service.
+	 * 
+	 * @param indexCheckInterval milliseconds
+	 */
+	public void setIndexCheckInterval(long indexCheckInterval) {
+		this.indexCheckInterval = indexCheckInterval;
+	}
+
+	public long getIndexCheckInterval() {
+		return indexCheckInterval;
+	}
 	
 	public void setMaxHitsPerPage(int maxHitsPerPage) {
 		this.maxHitsPerPage = maxHitsPerPage;
@@ -141,83 +638,241 @@ public class SearchEngine implements Indexer, Searcher {
 		return maxHitsPerPage;
 	}
 
+	/**
+	 * Sets the max. time to collect the hits of a search query;
+	 * the hits found by then are returned as partial results
+	 * (scan, findAllUris, count and countByDatasource are not limited).
+	 * 
+	 * @param searchTimeLimit milliseconds; zero or negative - no limit
+	 */
+	public void setSearchTimeLimit(long searchTimeLimit) {
+		this.searchTimeLimit = searchTimeLimit;
+	}
+
+	// sets the clock to check the search time limit with (for tests)
+	void setSearchClock(Counter searchClock) {
+		this.searchClock = searchClock;
+	}
+
+	public long getSearchTimeLimit() {
+		return searchTimeLimit;
+	}
+
+	/**
+	 * Sets the order of hits in the listing mode (q="*"):
+	 * by the number of processes in a pathway/interaction (the 'size' doc value), 
+	 * largest first, and then in the index order; or (default) just in the index order.
+	 * 
+	 * @param listingBySize
+	 */
+	public void setListingBySize(boolean listingBySize) {
+		this.listingBySize = listingBySize;
+	}
+
+	public boolean isListingBySize() {
+		return listingBySize;
+	}
+
+	/**
+	 * Sets whether to read all the index files (into the OS page cache)
+	 * before the warm-up queries run, when the searcher is switched to a new index.
+	 * The queries only touch the parts of the index they need; preloading
+	 * helps when there is enough RAM to keep the whole index cached
+	 * (then the first user queries of any kind are not slowed down by disk reads),
+	 * but it costs reading the entire index every time (default - off).
+	 * 
+	 * @param preload
+	 */
+	public void setPreload(boolean preload) {
+		this.preload = preload;
+	}
+
+	public boolean isPreload() {
+		return preload;
+	}
+
+	/**
+	 * Sets the number of threads to use to build the index
+	 * (default is the number of available processors).
+	 * 
+	 * @param indexThreads
+	 */
+	public void setIndexThreads(int indexThreads) {
+		if(indexThreads <= 0)
+			throw new IllegalArgumentException("indexThreads must be greater than zero");
+		this.indexThreads = indexThreads;
+	}
+
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	/**
+	 * Sets other identifiers of the biopax objects, by URI, 
+	 * to index (in the 'xrefid' and 'keyword' fields) along with their own xref IDs, 
+	 * e.g., the IDs found using child elements' xrefs and id-mapping.
+	 * The map is only read (by several threads) when (re-)indexing,
+	 * and it must not be modified meanwhile.
+	 * 
+	 * @param otherIds
+	 */
+	public void setOtherIds(Map<String, Set<String>> otherIds) {
+		this.otherIds = (otherIds != null) ? otherIds : Collections.<String, Set<String>>emptyMap();
+	}
+
+	/**
+	 * Sets the IndexWriter's RAM buffer size (Mb),
+	 * i.e., how much memory to use for buffering new documents 
+	 * before flushing them to a new index segment.
+	 * 
+	 * @param ramBufferSizeMB
+	 */
+	public void setRamBufferSizeMB(double ramBufferSizeMB) {
+		this.ramBufferSizeMB = ramBufferSizeMB;
+	}
+
+	public double getRamBufferSizeMB() {
+		return ramBufferSizeMB;
+	}
+
+	/**
+	 * @return number of times a search filter was found in the cache
+	 */
+	public long getFilterCacheHits() {
+		return filterCache.getHits();
+	}
+
+	/**
+	 * @return number of times a search filter had to be created
+	 */
+	public long getFilterCacheMisses() {
+		return filterCache.getMisses();
+	}
+
+	/**
+	 * @return number of least recently used search filters removed from the full cache
+	 */
+	public long getFilterCacheEvictions() {
+		return filterCache.getEvictions();
+	}
+
+	/**
+	 * Gets the version of the index reader that is currently used
+	 * (without acquiring a searcher), which changes after the index
+	 * is updated or replaced.
+	 * 
+	 * @return version or -1 when there is no index
+	 */
+	public long getIndexVersion() {
+		checkIndex();
+		return (searcherManager != null) ? indexVersion : -1L;
+	}
+
 	public SearchResponse search(String query, int page,
 			Class<? extends BioPAXElement> filterByType, String[] datasources,
 			String[] organisms) 
+	{
+		if(page < 0)
+			throw new IllegalArgumentException("Negative page number: " + page);
+
+		return search(query, page, null, filterByType, datasources, organisms, false, searchTimeLimit);
+	}
+
+	public SearchResponse search(String query, int page,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms, boolean facets) 
+	{
+		if(page < 0)
+			throw new IllegalArgumentException("Negative page number: " + page);
+
+		return search(query, page, null, filterByType, datasources, organisms, facets, searchTimeLimit);
+	}
+
+	public SearchResponse searchAfter(String query, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms)
+	{
+		return searchAfter(query, cursor, filterByType, datasources, organisms, false);
+	}
+
+	public SearchResponse searchAfter(String query, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms, boolean facets)
+	{
+		SearchCursor after = SearchCursor.decode(cursor);
+		return search(query, after.getPage() + 1, after, filterByType, datasources, organisms, facets, searchTimeLimit);
+	}
+
+	public SearchResponse scan(String query, String cursor,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms)
+	{
+		if(cursor == null)
+			return search(query, 0, null, filterByType, datasources, organisms, false, 0L);
+		
+		SearchCursor after = SearchCursor.decode(cursor);
+		return search(query, after.getPage() + 1, after, filterByType, datasources, organisms, false, 0L);
+	}
+
+	/*
+	 * Gets the hits page either by the page number (when 'after' is null),
+	 * collecting top (page+1)*maxHitsPerPage docs in a single pass,
+	 * or by the search cursor ('searchAfter'), collecting only maxHitsPerPage docs;
+	 * optionally, also counts all the hits by datasource, organism, type (facets);
+	 * stops after the time limit, ms (zero - no limit).
+	 */
+	private SearchResponse search(String query, int page, SearchCursor after,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms, boolean facets, long timeLimit)
 	{
 		SearchResponse response = null;
 		
 		LOG.debug("search: " + query + ", page: " + page 
+			+ ((after != null) ? ", after: " + after : "")
 			+ ", filterBy: " + filterByType
 			+ "; extra filters: ds in (" + Arrays.toString(datasources)
 			+ "), org. in (" + Arrays.toString(organisms) + ")");
 		
-		IndexSearcher searcher = null;
+		Lease lease = null;
 	
 		try {	
-			QueryParser queryParser = new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
-			queryParser.setAllowLeadingWildcard(true);//we want leading wildcards enabled (e.g. *sulin)
+			lease = acquire();
+			final IndexSearcher searcher = lease.searcher;
 			
-			searcher = searcherManager.acquire();	
+			//a cursor is valid only for the same index reader (doc ids can change otherwise)
+			final long generation = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+			if(after != null && after.getGeneration() != generation)
+				throw new IllegalArgumentException("The search cursor has expired (index was updated); "
+					+ "start over from the first page.");
 			
 			//find and transform top docs to search hits (beans), considering pagination...
-			if(!query.trim().equals("*")) { //if not "*" query, which is not supported out-of-the-box, then
-				//create the lucene query
-				Query luceneQuery = queryParser.parse(query);
-				//do NOT rewrite (Lucene 4.1), or scoring/highlighting won't work for wildcard queries...
-				//luceneQuery = searcher.rewrite(luceneQuery);
-				LOG.debug("parsed lucene query is " + luceneQuery.getClass().getSimpleName());
-				
-				//create filter: type AND (d OR d...) AND (o OR o...)
-				Filter filter = createFilter(filterByType, datasources, organisms);
-				
-				//get the first page of top hits
-				TopDocs topDocs = searcher.search(luceneQuery, filter, maxHitsPerPage);
-				//get the required hits page if page>0
-				if(page>0) {
-					TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage*(page+1), true);  
-					searcher.search(luceneQuery, filter, collector);
-					topDocs = collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);
-				}
-				
-				//transform docs to hits, use a highlighter to get excerpts
-				response = transform(luceneQuery, searcher, true, topDocs);
-	
-			} else { //find ALL objects of a particular BioPAX class (+ filters by organism, datasource)
-				if(filterByType==null) 
-					filterByType = Level3Element.class;
-
-				//replace q="*" with a search for the class or its sub-class name in the TYPE field
-				BooleanQuery luceneQuery = new BooleanQuery();
-				for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(filterByType)) {
-					luceneQuery.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);
-				}
-				Filter filter = createFilter(null, datasources, organisms);
-				
-				//get the first page of top hits
-				TopDocs topDocs = searcher.search(luceneQuery, filter, maxHitsPerPage);
-				//get the required hits page if page>0
-				if(page>0) {
-					TopScoreDocCollector collector = TopScoreDocCollector.create(maxHitsPerPage*(page+1), true);  
-					searcher.search(luceneQuery, filter, collector);
-					topDocs = collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);	
-				}
-				
-				//convert
-				response = transform(luceneQuery, searcher, false, topDocs);			
-			}	
+			final boolean all = isAllQuery(query);
+			Query luceneQuery = createQuery(query, filterByType);
+			//create filter: type AND (d OR d...) AND (o OR o...); for q="*", the type is already in the query
+			Filter filter = cachedFilter(generation, (all) ? null : filterByType, datasources, organisms);
+			
+			//get the required page of top hits (and facet counts, if requested)
+			FacetCounter facetCounter = (facets) ? new FacetCounter() : null;
+			AtomicBoolean timedOut = new AtomicBoolean();
+			TopDocs topDocs = topDocs(searcher, luceneQuery, filter, all, page, after, facetCounter, timeLimit, timedOut);
+			
+			//transform docs to hits; unless q="*", use a highlighter to get excerpts
+			//(the highlighter works with the 'keyword' field, not the reversed one)
+			Query highlightQuery = (reversedFields && !all && (query.indexOf('*') >= 0 || query.indexOf('?') >= 0))
+				? createQuery(query, filterByType, false) : luceneQuery;
+			response = transform(highlightQuery, searcher, !all, topDocs);
+			response.setPartial(timedOut.get());
+			setCursor(response, generation, page, topDocs);
+			if(facetCounter != null)
+				response.getFacetCount().addAll(facetCounter.getFacetCounts());
 			
 		} catch (ParseException e) {
 			throw new RuntimeException("getTopDocs: failed to parse the search query: " + e);
 		} catch (IOException e) {
 			throw new RuntimeException("getTopDocs: failed: " + e);
 		} finally {
-			try {
-				if(searcher!=null) {
-					searcherManager.release(searcher);
-					searcher = null;
-				}
-			} catch (IOException e) {}	
+			if(lease != null)
+				lease.release();
 		}
 	
 		response.setPageNo(page);
@@ -225,6 +880,178 @@ public class SearchEngine implements Indexer, Searcher {
 		return response;
 	}
 
+	public List<String> suggest(String text, int max) {
+		final Suggester s = suggester;
+		if(s == null || text == null || text.trim().isEmpty() || max < 1)
+			return Collections.emptyList();
+		try {
+			return s.suggest(text, max);
+		} catch (AlreadyClosedException e) {
+			//the index has been just replaced; use the new suggester
+			return (suggester != s) ? suggest(text, max) : Collections.<String>emptyList();
+		} catch (IOException e) {
+			throw new RuntimeException("suggest: failed: " + e);
+		}
+	}
+
+	public Collection<String> findAllUris(String query,
+			Class<? extends BioPAXElement> filterByType, String[] datasources,
+			String[] organisms)
+	{
+		LOG.debug("findAllUris: " + query + ", filterBy: " + filterByType
+			+ "; extra filters: ds in (" + Arrays.toString(datasources)
+			+ "), org. in (" + Arrays.toString(organisms) + ")");
+		
+		final Collection<String> uris = new ArrayList<String>();
+		Lease lease = null;
+		try {
+			lease = acquire();
+			final IndexSearcher searcher = lease.searcher;
+			final long generation = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+			Query luceneQuery = createQuery(query, filterByType);
+			Filter filter = cachedFilter(generation, (isAllQuery(query)) ? null : filterByType, datasources, organisms);
+			//one pass over all matching docs, no scoring, sorting, paging, or hit beans
+			searcher.search(luceneQuery, filter, new UriCollector(uris));
+		} catch (ParseException e) {
+			throw new RuntimeException("findAllUris: failed to parse the search query: " + e);
+		} catch (IOException e) {
+			throw new RuntimeException("findAllUris: failed: " + e);
+		} finally {
+			if(lease != null)
+				lease.release();
+		}
+		
+		return uris;
+	}
+
+	public int count(String query, Class<? extends BioPAXElement> filterByType, 
+			String[] datasources, String[] organisms) 
+	{
+		Lease lease = null;
+		try {
+			lease = acquire();
+			final IndexSearcher searcher = lease.searcher;
+			final long generation = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+			Query luceneQuery = createQuery(query, filterByType);
+			Filter filter = cachedFilter(generation, (isAllQuery(query)) ? null : filterByType, datasources, organisms);
+			TotalHitCountCollector collector = new TotalHitCountCollector();
+			searcher.search(luceneQuery, filter, collector);
+			return collector.getTotalHits();
+		} catch (ParseException e) {
+			throw new RuntimeException("count: failed to parse the search query: " + e);
+		} catch (IOException e) {
+			throw new RuntimeException("count: failed: " + e);
+		} finally {
+			if(lease != null)
+				lease.release();
+		}
+	}
+
+	public Map<String, int[]> countByDatasource(Collection<Class<? extends BioPAXElement>> types) {
+		Lease lease = null;
+		try {
+			lease = acquire();
+			final IndexSearcher searcher = lease.searcher;
+			TypeDatasourceCounter counter = new TypeDatasourceCounter(types);
+			searcher.search(new MatchAllDocsQuery(), counter);
+			return counter.getCounts();
+		} catch (IOException e) {
+			throw new RuntimeException("countByDatasource: failed: " + e);
+		} finally {
+			if(lease != null)
+				lease.release();
+		}
+	}
+
+	private static boolean isAllQuery(String query) {
+		return query.trim().equals("*");
+	}
+
+	/*
+	 * Creates the lucene query from the query string;
+	 * q="*" (find ALL objects of a particular BioPAX class), which is not supported out-of-the-box,
+	 * is replaced with a constant score (listing) query for the class or its sub-class 
+	 * in the TYPEALL field, or - with a match-all docs query.
+	 */
+	private Query createQuery(String query, Class<? extends BioPAXElement> filterByType)
+			throws ParseException
+	{
+		return createQuery(query, filterByType, reversedFields);
+	}
+
+	/*
+	 * Same as above, but leading wildcard terms (e.g., *sulin) in the 'name' and 'keyword' fields
+	 * optionally become prefix/wildcard queries in the reversed tokens fields (e.g., nilus*),
+	 * which do not have to enumerate all the terms.
+	 */
+	private Query createQuery(String query, Class<? extends BioPAXElement> filterByType, boolean reversed)
+			throws ParseException
+	{
+		if(!isAllQuery(query)) {
+			QueryParser queryParser = (reversed) 
+				? new ReversedWildcardQueryParser(DEFAULT_FIELDS, analyzer)
+					: new MultiFieldQueryParser(DEFAULT_FIELDS, analyzer);
+			queryParser.setAllowLeadingWildcard(true);//we want leading wildcards enabled (e.g. *sulin)
+			Query luceneQuery = queryParser.parse(query);
+			//do NOT rewrite (Lucene 4.1), or scoring/highlighting won't work for wildcard queries...
+			//luceneQuery = searcher.rewrite(luceneQuery);
+			LOG.debug("parsed lucene query is " + luceneQuery.getClass().getSimpleName());
+			return luceneQuery;
+		} else {
+			//listing mode: constant score (all matching docs are equally relevant)
+			if(filterByType==null || filterByType == Level3Element.class) 
+				return new MatchAllDocsQuery(); //only Level3Element objects are indexed
+			return new ConstantScoreQuery(typeQuery(filterByType));
+		}
+	}
+
+	/*
+	 * Collects only the docs needed for the page:
+	 * either maxHitsPerPage after the cursor's last doc, or
+	 * the top (page+1)*maxHitsPerPage docs (one pass) and then takes the page.
+	 * In the listing mode (q="*"), docs are not scored but collected in the index order
+	 * or sorted by size (see {@link #setListingBySize(boolean)}).
+	 * The optional extra collector gets all the matching docs (e.g., to count facets).
+	 * When the time limit (ms; zero - none) is over, the docs collected so far are used 
+	 * (and timedOut is set).
+	 */
+	private TopDocs topDocs(IndexSearcher searcher, Query query, Filter filter, boolean listing, 
+			int page, SearchCursor after, Collector extra, long timeLimit, AtomicBoolean timedOut) throws IOException
+	{
+		final int numHits = (after != null) ? maxHitsPerPage : maxHitsPerPage*(page+1);
+		final boolean bySize = listing && listingBySize;
+		if(after != null && listing && after.isSortedBySize() != bySize)
+			throw new IllegalArgumentException("The search cursor has expired (listing order changed); "
+				+ "start over from the first page.");
+		final TopDocsCollector<?> collector = (listing)
+			? TopFieldCollector.create((bySize) ? SIZE_ORDER : Sort.INDEXORDER, numHits, 
+					(after != null) ? after.getFieldDoc() : null, true, false, false, true)
+			: TopScoreDocCollector.create(numHits, 
+					(after != null) ? after.getScoreDoc() : null, true);
+		
+		//also collect, e.g., facets in the same pass
+		Collector c = (extra != null) ? MultiCollector.wrap(collector, extra) : collector;
+		if(timeLimit > 0)
+			c = new TimeLimitingCollector(c, searchClock, timeLimit);
+		try {
+			searcher.search(query, filter, c);
+		} catch (TimeLimitingCollector.TimeExceededException e) {
+			LOG.warn("topDocs: query '" + query + "' is taking too long; return partial results (" 
+					+ collector.getTotalHits() + " hits so far)");
+			timedOut.set(true);
+		}
+		
+		return (after != null) ? collector.topDocs() : collector.topDocs(page * maxHitsPerPage, maxHitsPerPage);
+	}
+
+	//the cursor points to the last hit on the page (if any)
+	private void setCursor(SearchResponse response, long generation, int page, TopDocs topDocs) {
+		if(topDocs.scoreDocs.length > 0) {
+			ScoreDoc last = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+			response.setCursor(new SearchCursor(generation, page, last).encode());
+		}
+	}
+
 	
 	// Transform Lucene docs to hits (xml/java beans)
 	private SearchResponse transform(Query query, IndexSearcher searcher, boolean highlight, TopDocs topDocs) 
@@ -239,14 +1066,20 @@ public class SearchEngine implements Indexer, Searcher {
 		List<SearchHit> hits = response.getSearchHit();//empty list
 		assert hits!=null && hits.isEmpty();
 		LOG.debug("transform, no. TopDocs to process:" + topDocs.scoreDocs.length);
+		final List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
 		for(ScoreDoc scoreDoc : topDocs.scoreDocs) {			
 			SearchHit hit = new SearchHit();
-			Document doc = searcher.doc(scoreDoc.doc);
-			String uri = doc.get(FIELD_URI);
+			// read hit's values from the doc values (column-stride) of the index segment;
+			// stored fields (keywords) are loaded only for highlighting
+			final AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+			final AtomicReader reader = leaf.reader();
+			final int docId = scoreDoc.doc - leaf.docBase;
+			String uri = uri(reader, docId);
 			BioPAXElement bpe = model.getByID(uri);
 			
 			// use the highlighter (get matching fragments)
 			// for this to work, all keywords were stored in the index field
+			Document doc = (highlight) ? reader.document(docId, KEYWORD_FIELD_TO_LOAD) : null;
 			if (highlight && doc.get(FIELD_KEYWORD) != null) {				
 				// use a Highlighter (store.YES must be enabled for 'keyword' field)
 				QueryScorer scorer = new QueryScorer(query, FIELD_KEYWORD);
@@ -305,44 +1138,25 @@ public class SearchEngine implements Indexer, Searcher {
 				}	
 			}
 						
-			// extract organisms (URI only) 
-			if(doc.get(FIELD_ORGANISM) != null) {
-				Set<String> uniqueVals = new TreeSet<String>();
-				for(String o : doc.getValues(FIELD_ORGANISM)) {
-					//note: only URIS are stored in the index					
-					uniqueVals.add(o);
-				}
-				hit.getOrganism().addAll(uniqueVals);
-			}
+			// extract organisms (URI only; names, etc. are indexed but not stored)
+			hit.getOrganism().addAll(docValues(reader, FIELD_ORGANISM, docId));
 			
-			// extract values form the index
-			if(doc.get(FIELD_DATASOURCE) != null) {
-				Set<String> uniqueVals = new TreeSet<String>();
-				for(String d : doc.getValues(FIELD_DATASOURCE)) {
-					//note: only URIS are stored in the index
-					uniqueVals.add(d);
-				}
-				hit.getDataSource().addAll(uniqueVals);
-			}	
+			// extract data source URIs
+			hit.getDataSource().addAll(docValues(reader, FIELD_DATASOURCE, docId));
 			
 			// extract only pathway URIs 
-			//(because names and IDs used to be stored in the index field as well)
-			if(doc.get(FIELD_PATHWAY) != null) {
-				Set<String> uniqueVals = new TreeSet<String>();
-				for(String d : doc.getValues(FIELD_PATHWAY)) {
-					//only URIs were stored (though all names/ids were indexed/analyzed)
-					if(!d.equals(uri)) //exclude itself
-						uniqueVals.add(d);
-				}
-				hit.getPathway().addAll(uniqueVals);
-			}
+			//(names and IDs are indexed/analyzed but not kept)
+			Set<String> pathways = docValues(reader, FIELD_PATHWAY, docId);
+			pathways.remove(uri); //exclude itself
+			hit.getPathway().addAll(pathways);
 			
 			//no. processes in the sub-network
-			if(doc.get(FIELD_SIZE)!=null)
-				hit.setSize(Integer.valueOf(doc.get(FIELD_SIZE))); 
+			Bits hasSize = reader.getDocsWithField(FIELD_SIZE);
+			if(hasSize != null && hasSize.get(docId))
+				hit.setSize((int) reader.getNumericDocValues(FIELD_SIZE).get(docId)); 
 			
 			//if cpath2 debugging, update hit.excerpt - add the Lucene's 'explain' using the query and doc.
-			if(CPathSettings.getInstance().isDebugEnabled()) {
+			if(CPathSettings.getInstance().isDebugEnabled() && !Float.isNaN(scoreDoc.score)) { //not for unscored listing
 				String excerpt = hit.getExcerpt();
 				if(excerpt == null) excerpt = "";
 				hit.setExcerpt(excerpt + " -SCORE- " + scoreDoc.score 
@@ -365,91 +1179,286 @@ public class SearchEngine implements Indexer, Searcher {
 	}
 
 
-	public void index() {
+	// the URI doc value (an index without those is not used, see checkFormat)
+	private static String uri(AtomicReader reader, int docId) throws IOException {
+		return reader.getBinaryDocValues(FIELD_URI).get(docId).utf8ToString();
+	}
+
 
+	// sorted unique values of a multi-valued doc values field, e.g., organism URIs
+	// (there are no such doc values in a segment where no doc has the field)
+	private static Set<String> docValues(AtomicReader reader, String field, int docId) throws IOException {
+		Set<String> values = new TreeSet<String>();
+		SortedSetDocValues dv = reader.getSortedSetDocValues(field);
+		if(dv != null) {
+			dv.setDocument(docId);
+			long ord;
+			while((ord = dv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+				values.add(dv.lookupOrd(ord).utf8ToString());
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Builds a new index in a side directory, checks it, and then replaces
+	 * the current index (moved to a backup directory) with the new one,
+	 * and switches to it; searches continue using the current index meanwhile.
+	 */
+	public void index() {
+		final File newIndexFile = new File(indexFile.getPath() + NEW_INDEX_SUFFIX);
+		CPathUtils.cleanupDirectory(newIndexFile); //in case there's a failed build
+		final String id = newBuildId();
+		
 		IndexWriter iw;
 		try {
-			//close the searcher manager if the old index exists
-			if(searcherManager != null) {
-				searcherManager.close();
-				searcherManager = null;
-			}
-			IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
-			iw = new IndexWriter(FSDirectory.open(indexFile), conf);
-			//cleanup
-			iw.deleteAll();
-			iw.commit();
+			IndexWriterConfig conf = indexWriterConfig();
+			conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+			iw = new IndexWriter(FSDirectory.open(newIndexFile), conf);
+			iw.setCommitData(Collections.singletonMap(BUILD_ID, id));
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to create a new IndexWriter.", e);
 		}		
-		final IndexWriter indexWriter = iw;
-
-		ExecutorService exec = Executors.newFixedThreadPool(30);
-
-		final org.biopax.paxtools.util.Filter<DataPropertyEditor> dataPropertiesToConsider
-				= new org.biopax.paxtools.util.Filter<DataPropertyEditor>() {
-			@Override
-			public boolean filter(DataPropertyEditor editor) {
-				final String prop = editor.getProperty();
-				//to include in the index, as keywords, only the following properties
-				// (basically, to exclude float type properties, embedded xml, db names, etc.):
-				return (prop.equalsIgnoreCase("author") || prop.equalsIgnoreCase("availability")
-						|| prop.equalsIgnoreCase("chemicalFormula") || prop.equalsIgnoreCase("comment")
-						|| prop.equalsIgnoreCase("controlType") || prop.equalsIgnoreCase("conversionDirection")
-						|| prop.equalsIgnoreCase("eCNumber") || prop.equalsIgnoreCase("id")
-						|| prop.equalsIgnoreCase("name") || prop.equalsIgnoreCase("displayName")
-						|| prop.equalsIgnoreCase("standardName") || prop.equalsIgnoreCase("sequence")
-						|| prop.equalsIgnoreCase("source") || prop.equalsIgnoreCase("year")
-						|| prop.equalsIgnoreCase("term") || prop.equalsIgnoreCase("stepDirection")
-						|| prop.equalsIgnoreCase("structureData") || prop.equalsIgnoreCase("templateDirection")
-						|| prop.equalsIgnoreCase("title") || prop.equalsIgnoreCase("url")
-				);
-			}
-		};
 
-		final int numObjectsToIndex = model.getObjects(Entity.class).size()
-				+ model.getObjects(EntityReference.class).size();
-		LOG.info("index(), there are " + numObjectsToIndex + " Entity or EntityReference objects to index.");
+		final Collection<BioPAXElement> elements = new ArrayList<BioPAXElement>();
+		for(BioPAXElement bpe : model.getObjects()) {
+			if(bpe instanceof Entity || bpe instanceof EntityReference || bpe instanceof Provenance)
+				elements.add(bpe); //skip for UtilityClass but EntityReference, Provenance
+		}
+		LOG.info("index(), there are " + elements.size() + " Entity, EntityReference or Provenance objects to index; using " 
+				+ indexThreads + " threads, RAM buffer " + ramBufferSizeMB + "Mb.");
+		
+		final IdResolver.Builder ids = new IdResolver.Builder();
+		final Suggester.Builder suggestions = new Suggester.Builder();
+		write(iw, elements, false, ids, suggestions);
+		try {
+			ids.build().write(newIndexFile);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to save the id resolver in " + newIndexFile.getPath(), e);
+		}
+		try {
+			suggestions.write(newIndexFile, analyzer);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to build the suggester in " + newIndexFile.getPath(), e);
+		}
+		
+		verify(newIndexFile, id, elements.size());
+		
+		//finally, replace the index and switch to it
+		replace(newIndexFile);
+	}
+
+	// checks the new index can be open and has all the documents
+	private void verify(File dir, String id, int numDocs) {
+		DirectoryReader reader = null;
+		try {
+			reader = DirectoryReader.open(FSDirectory.open(dir));
+			if(!id.equals(reader.getIndexCommit().getUserData().get(BUILD_ID)) || reader.numDocs() != numDocs)
+				throw new IllegalStateException("The new index is not valid: " + dir.getPath() + 
+					"; no. documents: " + reader.numDocs() + " (expected " + numDocs + ")");
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to verify the new index: " + dir.getPath(), e);
+		} finally {
+			try {
+				if(reader != null)
+					reader.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	/*
+	 * Moves the current index directory to the backup, the new one - in its place, 
+	 * and switches to the new index. The previous backup is not deleted right away,
+	 * for another process (service) might still use it, until it switches 
+	 * to the new index too (see checkIndex); so it's renamed and deleted 
+	 * during one of the next replacements, after a few index check intervals.
+	 */
+	private synchronized void replace(File newIndexFile) {
+		final File oldIndexFile = new File(indexFile.getPath() + OLD_INDEX_SUFFIX);
+		try {
+			deleteRetiredIndexes();
+			if(oldIndexFile.exists())
+				Files.move(oldIndexFile.toPath(), new File(indexFile.getPath() + RETIRED_INDEX_SUFFIX 
+					+ System.currentTimeMillis()).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			if(indexFile.exists())
+				Files.move(indexFile.toPath(), oldIndexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to replace the index " + indexFile.getPath(), e);
+		}
+		
+		switchSearcherManager();
+	}
+
+	// deletes the previous backups that no other process should use anymore
+	private void deleteRetiredIndexes() {
+		final File[] files = indexFile.getAbsoluteFile().getParentFile().listFiles();
+		if(files == null)
+			return;
+		
+		final String prefix = indexFile.getName() + RETIRED_INDEX_SUFFIX;
+		for(File f : files) {
+			if(!f.isDirectory() || !f.getName().startsWith(prefix))
+				continue;
+			try {
+				long retired = Long.parseLong(f.getName().substring(prefix.length()));
+				if(System.currentTimeMillis() - retired > 2 * indexCheckInterval) {
+					CPathUtils.cleanupDirectory(f);
+					if(!f.delete())
+						LOG.warn("Could not delete the old index " + f.getPath());
+				}
+			} catch (NumberFormatException e) {} //not ours
+		}
+	}
 
-		final AtomicInteger numLeft = new AtomicInteger(numObjectsToIndex);
-		for(final BioPAXElement bpe : model.getObjects()) {
+	/**
+	 * Updates the existing index: re-indexes the biopax objects 
+	 * that are associated with the data source now or were before (in the index)
+	 * and deletes the documents of the objects that are no longer in the model
+	 * (without re-building the entire index); finally, refreshes the searcher 
+	 * (the searches in progress continue to use the old index reader).
+	 * 
+	 * Note: the index must have been built by this version of {@link #index()},
+	 * where the 'uri' field is indexed.
+	 * 
+	 * @param datasource Provenance URI
+	 * @throws IllegalStateException when there is no index yet
+	 */
+	public void update(final String datasource) {
+		if(searcherManager == null)
+			throw new IllegalStateException("update: there is no index; " + indexFile.getPath());
+		
+		// URIs of the documents currently associated with the data source
+		final Set<String> indexedUris = new HashSet<String>();
+		Lease lease = null;
+		try {
+			lease = acquire();
+			final IndexSearcher searcher = lease.searcher;
+			searcher.search(new TermQuery(new Term(FIELD_DATASOURCE, datasource)), new UriCollector(indexedUris));
+		} catch (IOException e) {
+			throw new RuntimeException("update: failed to find indexed objects of " + datasource, e);
+		} finally {
+			if(lease != null)
+				lease.release();
+		}
+		
+		// objects to (re-)index: associated with the data source now or before
+		final Collection<BioPAXElement> elements = new ArrayList<BioPAXElement>();
+		for(BioPAXElement bpe : model.getObjects()) {
 			if(!(bpe instanceof Entity || bpe instanceof EntityReference || bpe instanceof Provenance))
-				continue; //skip for UtilityClass but EntityReference, Provenance
-
-			// prepare & index each element in a separate thread
-			exec.execute(new Runnable() {
-				public void run() {					
-					// get or infer some important values if possible from this, child or parent objects:
-					Set<String> keywords = ModelUtils.getKeywords(bpe, 4, dataPropertiesToConsider);
-
-					// a hack to remove special (debugging) biopax comments
-					for(String s : new HashSet<String>(keywords)) {
-						//exclude additional comments generated by normalizer, merger, etc.
-						if(s.startsWith("REPLACED ") || s.contains("ADDED"))
-							keywords.remove(s);
-					}
-					
-					bpe.getAnnotations().put(FIELD_KEYWORD, keywords);
-					bpe.getAnnotations().put(FIELD_DATASOURCE, ModelUtils.getDatasources(bpe));
-					bpe.getAnnotations().put(FIELD_ORGANISM, ModelUtils.getOrganisms(bpe));
-					bpe.getAnnotations().put(FIELD_PATHWAY, ModelUtils.getParentPathways(bpe));
-					
-					// for bio processes, also save the total no. member interactions and pathways:
-					if(bpe instanceof org.biopax.paxtools.model.level3.Process) {
-						int size = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter)
-								.fetch(bpe, Process.class).size(); //except itself						
-						bpe.getAnnotations().put(FIELD_SIZE, Integer.toString(size)); 
+				continue;
+			if(indexedUris.remove(bpe.getUri()) || datasource.equals(bpe.getUri())) {
+				elements.add(bpe);
+			} else {
+				for(Provenance pro : ModelUtils.getDatasources(bpe)) {
+					if(datasource.equals(pro.getUri())) {
+						elements.add(bpe);
+						break;
 					}
-
-					index(bpe, indexWriter);
-					
-					//count, log a progress message
-					int left = numLeft.decrementAndGet();
-					if(left % 10000 == 0)
-						LOG.info("index(), biopax objects left to index: " + left);
 				}
-			});
+			}
 		}
+		// the rest of indexedUris are not in the model anymore
+		LOG.info("update(), " + datasource + ": " + elements.size() + " objects to re-index, " 
+				+ indexedUris.size() + " to delete");
+		
+		final String id = newBuildId();
+		IndexWriter iw;
+		try {
+			IndexWriterConfig conf = indexWriterConfig();
+			conf.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+			iw = new IndexWriter(FSDirectory.open(indexFile), conf);
+			iw.setCommitData(Collections.singletonMap(BUILD_ID, id));
+			for(String uri : indexedUris)
+				iw.deleteDocuments(new Term(FIELD_URI, uri));
+		} catch (IOException e) {
+			throw new RuntimeException("update: failed to open the IndexWriter or delete documents.", e);
+		}
+		
+		// the id resolver is updated as well
+		final Set<String> excludeUris = new HashSet<String>(indexedUris);
+		for(BioPAXElement bpe : elements)
+			excludeUris.add(bpe.getUri());
+		final IdResolver.Builder ids = new IdResolver.Builder(idResolver, excludeUris);
+		// suggestions are re-built from the entire model (names, weights might have changed)
+		final Suggester.Builder suggestions = new Suggester.Builder();
+		write(iw, elements, true, ids, suggestions);
+		final IdResolver resolver = ids.build();
+		
+		// open a new reader if the index has changed (old readers are closed once released)
+		try {
+			resolver.write(indexFile);
+			suggestions.write(indexFile, analyzer);
+			refresh(id, resolver);
+		} catch (IOException e) {
+			throw new RuntimeException("update: failed to refresh the searcher.", e);
+		}
+	}
+
+	// (not at the same time with switching to another index)
+	private synchronized void refresh(String id, IdResolver resolver) throws IOException {
+		searcherManager.maybeRefresh();
+		indexVersion = readerVersion(searcherManager);
+		idResolver = resolver;
+		buildId = id;
+		final Suggester old = suggester;
+		suggester = Suggester.open(indexFile, analyzer);
+		closeSuggester(old);
+	}
+	
+	// the version of the index reader currently used by the searcher manager
+	private static long readerVersion(SearcherManager sm) throws IOException {
+		final IndexSearcher searcher = sm.acquire();
+		try {
+			return ((DirectoryReader) searcher.getIndexReader()).getVersion();
+		} finally {
+			sm.release(searcher);
+		}
+	}
+	
+	private IndexWriterConfig indexWriterConfig() {
+		IndexWriterConfig conf = new IndexWriterConfig(Version.LATEST, analyzer);
+		conf.setRAMBufferSizeMB(ramBufferSizeMB);
+		return conf;
+	}
+	
+	/*
+	 * Indexes the biopax objects using several threads; 
+	 * when 'update' is true, replaces the existing documents having the same URI;
+	 * closes the index writer when done (commit).
+	 */
+	private void write(final IndexWriter indexWriter, Collection<BioPAXElement> elements, 
+			boolean update, IdResolver.Builder ids, Suggester.Builder suggestions) {
+		// a fixed thread pool with a bounded queue; when the queue is full,
+		// the (main) thread that submits the tasks runs the next task itself (back-pressure)
+		final ThreadPoolExecutor exec = new ThreadPoolExecutor(indexThreads, indexThreads, 
+				0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(2 * indexThreads),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+
+		// parent pathways of all the entities, entity references - at once
+		final PathwayAncestry ancestry = PathwayAncestry.build(model);
+		LOG.info("index(), computed parent pathways of all the biopax entities and entity references");
+		// keywords of shared child elements are collected once
+		final KeywordAggregator keywords = new KeywordAggregator(KEYWORD_DEPTH, KEYWORD_PROPERTIES, KEYWORD_MEMO_SIZE);
+		// no. child processes of every process - at once
+		final ProcessSizes sizes = ProcessSizes.build(model);
+		LOG.info("index(), computed sizes of all the biopax processes");
+		addSuggestions(suggestions, ancestry, sizes);
+		LOG.info("index(), collected " + suggestions.size() + " suggestions");
+
+		final AtomicInteger numLeft = new AtomicInteger(elements.size());
+		final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		List<BioPAXElement> batch = new ArrayList<BioPAXElement>(INDEX_BATCH_SIZE);
+		for(final BioPAXElement bpe : elements) {
+			batch.add(bpe);
+			if(batch.size() == INDEX_BATCH_SIZE) {
+				exec.execute(new IndexTask(batch, ancestry, keywords, sizes, ids, indexWriter, update, numLeft, error));
+				batch = new ArrayList<BioPAXElement>(INDEX_BATCH_SIZE);
+			}
+		}
+		if(!batch.isEmpty())
+			exec.execute(new IndexTask(batch, ancestry, keywords, sizes, ids, indexWriter, update, numLeft, error));
 		
 		exec.shutdown(); //stop accepting new tasks	
 		try { //wait
@@ -457,15 +1466,177 @@ public class SearchEngine implements Indexer, Searcher {
 		} catch (InterruptedException e) {
 			throw new RuntimeException("Interrupted!", e);
 		}
+		LOG.info("index(), memoized keywords of " + keywords.size() + " (element, depth) pairs");
+		keywords.clear();
 		
 		try {
-			indexWriter.close(); //wait for pending op., auto-commit, close.
+			if(error.get() != null)
+				indexWriter.rollback(); //discard the changes since the last commit and close
+			else
+				indexWriter.close(); //wait for pending op., auto-commit, close.
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to close IndexWriter.", e);
 		} 
 		
-		//finally, create a new searcher manager
-		initSearcherManager();
+		if(error.get() != null)
+			throw new RuntimeException("index(), failed.", error.get());
+	}
+
+	/*
+	 * Collects names of all the entities and entity references, and HGNC symbols,
+	 * weighted by popularity - the no. parent pathways (and child processes).
+	 */
+	private void addSuggestions(Suggester.Builder suggestions, PathwayAncestry ancestry, ProcessSizes sizes) {
+		for(BioPAXElement bpe : model.getObjects()) {
+			if(!(bpe instanceof Entity || bpe instanceof EntityReference))
+				continue;
+			
+			long weight = 1 + ancestry.getParentPathways(bpe).size();
+			if(bpe instanceof Process) {
+				Integer size = sizes.getSize((Process) bpe);
+				if(size != null)
+					weight += size;
+			}
+			
+			Named named = (Named) bpe;
+			suggestions.add(named.getDisplayName(), weight);
+			if(named.getStandardName() != null && !named.getStandardName().equalsIgnoreCase(named.getDisplayName()))
+				suggestions.add(named.getStandardName(), weight);
+			
+			if(bpe instanceof EntityReference) {
+				for(Xref x : named.getXref()) {
+					if(x.getId() != null && "hgnc symbol".equalsIgnoreCase(x.getDb()))
+						suggestions.add(x.getId(), weight);
+				}
+			}
+		}
+	}
+
+	// name of the reversed tokens field for the field, or null
+	private static String reversedField(String field) {
+		if(FIELD_KEYWORD.equals(field))
+			return FIELD_KEYWORD_REV;
+		else if(FIELD_NAME.equals(field))
+			return FIELD_NAME_REV;
+		else
+			return null;
+	}
+
+	/*
+	 * The analyzer that also reverses the tokens of the *_rev fields
+	 * (tokenized and lowercased exactly like the original 'name' and 'keyword' fields).
+	 */
+	private static final class ReversingAnalyzer extends AnalyzerWrapper {
+		private final Analyzer delegate;
+
+		ReversingAnalyzer(Analyzer delegate) {
+			super(PER_FIELD_REUSE_STRATEGY);
+			this.delegate = delegate;
+		}
+
+		@Override
+		protected Analyzer getWrappedAnalyzer(String fieldName) {
+			return delegate;
+		}
+
+		@Override
+		protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+			if(!FIELD_KEYWORD_REV.equals(fieldName) && !FIELD_NAME_REV.equals(fieldName))
+				return components;
+			return new TokenStreamComponents(components.getTokenizer(),
+					new ReverseStringFilter(components.getTokenStream()));
+		}
+	}
+
+	/*
+	 * Rewrites leading wildcard terms in the 'name' and 'keyword' fields, such as *sulin or ?nsulin,
+	 * to the prefix or wildcard query in the reversed tokens field (nilus* or nilusn?), unless
+	 * the reversed term starts with a wildcard too (e.g., *sul*), or has escaped chars.
+	 */
+	private static final class ReversedWildcardQueryParser extends MultiFieldQueryParser {
+
+		ReversedWildcardQueryParser(String[] fields, Analyzer analyzer) {
+			super(fields, analyzer);
+		}
+
+		@Override
+		protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+			final String reversedField = reversedField(field);
+			if(reversedField == null || !isLeadingWildcard(termStr) || termStr.indexOf('\\') >= 0)
+				return super.getWildcardQuery(field, termStr);
+
+			final String reversed = new StringBuilder(termStr).reverse().toString();
+			if(isLeadingWildcard(reversed))
+				return super.getWildcardQuery(field, termStr);
+
+			final String prefix = reversed.substring(0, reversed.length() - 1);
+			if(reversed.endsWith("*") && prefix.indexOf('*') < 0 && prefix.indexOf('?') < 0)
+				return getPrefixQuery(reversedField, prefix);
+			else
+				return super.getWildcardQuery(reversedField, reversed);
+		}
+
+		private static boolean isLeadingWildcard(String termStr) {
+			return termStr.startsWith("*") || termStr.startsWith("?");
+		}
+	}
+
+	/*
+	 * Prepares and indexes a batch of biopax elements
+	 * (all the intermediate values are local to the task).
+	 */
+	private final class IndexTask implements Runnable {
+		private final List<BioPAXElement> batch;
+		private final PathwayAncestry ancestry;
+		private final KeywordAggregator keywords;
+		private final ProcessSizes sizes;
+		private final IdResolver.Builder ids;
+		private final IndexWriter indexWriter;
+		private final boolean update;
+		private final AtomicInteger numLeft;
+		private final AtomicReference<RuntimeException> error;
+
+		IndexTask(List<BioPAXElement> batch, PathwayAncestry ancestry, KeywordAggregator keywords,
+				ProcessSizes sizes, IdResolver.Builder ids, IndexWriter indexWriter, boolean update, 
+				AtomicInteger numLeft, AtomicReference<RuntimeException> error) {
+			this.batch = batch;
+			this.ancestry = ancestry;
+			this.keywords = keywords;
+			this.sizes = sizes;
+			this.ids = ids;
+			this.indexWriter = indexWriter;
+			this.update = update;
+			this.numLeft = numLeft;
+			this.error = error;
+		}
+
+		public void run() {
+			if(error.get() != null)
+				return; //another task has failed; skip the rest
+			
+			try {
+				for(BioPAXElement bpe : batch) {
+					// write
+					try {
+						Document doc = createDocument(bpe, ancestry, keywords, sizes, ids);
+						if(update)
+							indexWriter.updateDocument(new Term(FIELD_URI, bpe.getUri()), doc);
+						else
+							indexWriter.addDocument(doc);
+					} catch (IOException e) {
+						throw new RuntimeException("Failed to index; " + bpe.getUri(), e);
+					}
+					
+					//count, log a progress message
+					int left = numLeft.decrementAndGet();
+					if(left % 10000 == 0)
+						LOG.info("index(), biopax objects left to index: " + left);
+				}
+			} catch (RuntimeException e) {
+				LOG.error("index(), failed", e);
+				error.compareAndSet(null, e);
+			}
+		}
 	}
 
 	// internal methods
@@ -477,9 +1648,10 @@ public class SearchEngine implements Indexer, Searcher {
 	 * 
 	 * Some fields also include biopax data type property values not only from 
 	 * the biopax object but also from its child elements, up to some depth 
-	 * (using key-value pairs in the pre-computed bpe.annotations map):
+	 * (or parent pathways), which are calculated here 
+	 * (and other IDs - from the pre-computed map, see {@link #setOtherIds(Map)}):
 	 * 
-	 *  'uri' - biopax object's absolute URI, index=no, analyze=no, store=yes;
+	 *  'uri' - biopax object's absolute URI, index=yes, analyze=no, store=yes, docValues=binary;
 	 * 
 	 *  'name' - names, analyze=yes, store=yes; boosted;
 	 * 
@@ -490,54 +1662,65 @@ public class SearchEngine implements Indexer, Searcher {
 	 *            analyze=yes, store=yes;
 	 *  
 	 *  'datasource', 'organism' and 'pathway' - infer from this bpe and its child objects 
-	 *  									  	up to given depth/level, analyze=no, store=yes;
+	 *  									  	up to given depth/level (parent pathways - from the 
+	 *  									  	pre-computed ancestry), analyze=no, store=no; 
+	 *  									  	URIs are kept as sorted set doc values;
 	 *  
-	 *  'size' - number of child processes, an integer as string; analyze=no, store=yes
+	 *  'size' - number of child processes, an integer; analyze=no, store=no, docValues=numeric
 	*/
-	void index(BioPAXElement bpe, IndexWriter indexWriter) {		
+	Document createDocument(BioPAXElement bpe, PathwayAncestry ancestry, 
+			KeywordAggregator keywordAggregator, ProcessSizes sizes, IdResolver.Builder ids) {		
 		// create a new document
 		final Document doc = new Document();
 		
-		// save URI (not indexed field)
-		Field field = new StoredField(FIELD_URI, bpe.getUri());
+		// save URI (indexed as is, to update/delete the document); also - as doc values (used to build search hits)
+		Field field = new StringField(FIELD_URI, bpe.getUri(), Field.Store.YES);
 		doc.add(field);
+		doc.add(new BinaryDocValuesField(FIELD_URI, new BytesRef(bpe.getUri())));
 		
 		// index and store but not analyze/tokenize the biopax class name:
 		field = new StringField(FIELD_TYPE, bpe.getModelInterface().getSimpleName().toLowerCase(), Field.Store.YES);
 		doc.add(field);
+		// and as doc value (for counting by type)
+		doc.add(new SortedDocValuesField(FIELD_TYPE, new BytesRef(bpe.getModelInterface().getSimpleName().toLowerCase())));
 		
-		// make index fields from the annotations map (of pre-calculated/inferred values)
-		if(!bpe.getAnnotations().isEmpty()) {
-			if(bpe.getAnnotations().containsKey(FIELD_PATHWAY)) {
-				addPathways((Set<Pathway>)bpe.getAnnotations().get(FIELD_PATHWAY), doc);
-			}
-			if(bpe.getAnnotations().containsKey(FIELD_ORGANISM)) {
-				addOrganisms((Set<BioSource>)bpe.getAnnotations().get(FIELD_ORGANISM), doc);
-			}
-			if(bpe.getAnnotations().containsKey(FIELD_DATASOURCE)) {
-				addDatasources((Set<Provenance>)bpe.getAnnotations().get(FIELD_DATASOURCE), doc);
-			}
-			if(bpe.getAnnotations().containsKey(FIELD_KEYWORD)) {
-				addKeywords((Set<String>)bpe.getAnnotations().get(FIELD_KEYWORD), doc);
-			}
-			if(bpe.getAnnotations().containsKey(FIELD_SIZE)) {
-				field = new IntField(FIELD_SIZE,
-						Integer.parseInt((String)bpe.getAnnotations().get(FIELD_SIZE)), Field.Store.YES);
-				doc.add(field);
-			}
-			if(bpe.getAnnotations().containsKey(FIELD_XREFID)) {
-				//index biological IDs as keywords
-				addKeywords((Set<String>)bpe.getAnnotations().get(FIELD_XREFID), doc);
-				//index all IDs using "xrefid" fields
-				addXrefIds((Set<String>)bpe.getAnnotations().get(FIELD_XREFID), doc);
-			}
+		// index (don't store) the names of the biopax class and all its parent interfaces
+		for(String type : typeAll(bpe.getModelInterface())) {
+			doc.add(new StringField(FIELD_TYPEALL, type, Field.Store.NO));
+		}
+		
+		// get or infer some important values if possible from this, child or parent objects:
+		addPathways(ancestry.getParentPathways(bpe), doc);
+		addOrganisms(ModelUtils.getOrganisms(bpe), doc);
+		addDatasources(ModelUtils.getDatasources(bpe), doc);
+		
+		Set<String> keywords = keywordAggregator.getKeywords(bpe);
+		// a hack to remove special (debugging) biopax comments
+		for(String s : new HashSet<String>(keywords)) {
+			//exclude additional comments generated by normalizer, merger, etc.
+			if(s.startsWith("REPLACED ") || s.contains("ADDED"))
+				keywords.remove(s);
+		}
+		addKeywords(keywords, doc);
+		
+		// for bio processes, also save the total no. member interactions and pathways:
+		if(bpe instanceof org.biopax.paxtools.model.level3.Process) {
+			int size = sizes.getSize((Process) bpe); //except itself
+			doc.add(new IntField(FIELD_SIZE, size, Field.Store.NO));
+			doc.add(new NumericDocValuesField(FIELD_SIZE, size));
+		}
+		
+		// other IDs, pre-calculated by the caller (e.g., using id-mapping); the model is not modified
+		Set<String> xrefIds = otherIds.get(bpe.getUri());
+		if(xrefIds != null) {
+			//index biological IDs as keywords
+			addKeywords(xrefIds, doc);
+			//index all IDs using "xrefid" fields
+			addXrefIds(xrefIds, doc);
+			//and map the IDs to graph query seeds (physical entities and genes)
+			if(bpe instanceof PhysicalEntity || bpe instanceof Gene)
+				ids.add(bpe.getUri(), xrefIds);
 		}
-		bpe.getAnnotations().remove(FIELD_KEYWORD);
-		bpe.getAnnotations().remove(FIELD_DATASOURCE);
-		bpe.getAnnotations().remove(FIELD_ORGANISM);
-		bpe.getAnnotations().remove(FIELD_PATHWAY);
-		bpe.getAnnotations().remove(FIELD_SIZE);
-		bpe.getAnnotations().remove(FIELD_XREFID);
 
 		// name
 		if(bpe instanceof Named) {
@@ -546,11 +1729,13 @@ public class SearchEngine implements Indexer, Searcher {
 				field = new TextField(FIELD_NAME, named.getStandardName(), Field.Store.NO);
 				field.setBoost(3.0f);
 				doc.add(field);
+				doc.add(new TextField(FIELD_NAME_REV, named.getStandardName(), Field.Store.NO));
 			}
 			if(named.getDisplayName() != null && !named.getDisplayName().equalsIgnoreCase(named.getStandardName())) {
 				field = new TextField(FIELD_NAME, named.getDisplayName(), Field.Store.NO);
 				field.setBoost(2.5f);
 				doc.add(field);
+				doc.add(new TextField(FIELD_NAME_REV, named.getDisplayName(), Field.Store.NO));
 			}
 			for(String name : named.getName()) {
 				if(name.equalsIgnoreCase(named.getDisplayName()) || name.equalsIgnoreCase(named.getStandardName()))
@@ -558,6 +1743,7 @@ public class SearchEngine implements Indexer, Searcher {
 				field = new TextField(FIELD_NAME, name.toLowerCase(), Field.Store.NO);
 				field.setBoost(2.0f);
 				doc.add(field);
+				doc.add(new TextField(FIELD_NAME_REV, name.toLowerCase(), Field.Store.NO));
 			}
 		}
 		
@@ -585,11 +1771,20 @@ public class SearchEngine implements Indexer, Searcher {
 //			}
 //		}
 		
-		// write
-		try {
-			indexWriter.addDocument(doc);
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to index; " + bpe.getUri(), e);
+		return doc;
+	}
+
+	// lowercase simple names of the biopax type and its super-interfaces (biopax types only)
+	private static Set<String> typeAll(Class<? extends BioPAXElement> type) {
+		Set<String> types = new HashSet<String>();
+		addTypeAll(type, types);
+		return types;
+	}
+
+	private static void addTypeAll(Class<?> type, Set<String> types) {
+		if(BioPAXElement.class.isAssignableFrom(type) && types.add(type.getSimpleName().toLowerCase())) {
+			for(Class<?> parent : type.getInterfaces())
+				addTypeAll(parent, types);
 		}
 	}
 
@@ -597,6 +1792,7 @@ public class SearchEngine implements Indexer, Searcher {
 		for (String keyword : keywords) {
 			Field f = new TextField(FIELD_KEYWORD, keyword.toLowerCase(), Field.Store.YES);
 			doc.add(f);
+			doc.add(new TextField(FIELD_KEYWORD_REV, keyword.toLowerCase(), Field.Store.NO));
 		}
 	}
 
@@ -611,7 +1807,9 @@ public class SearchEngine implements Indexer, Searcher {
 		for (Provenance p : set) {
 			// Index and store URI (untokinized) - 
 			// required to accurately calculate no. entities or to filter by data source (diff. datasources may share same names)
-			doc.add(new StringField(FIELD_DATASOURCE, p.getUri(), Field.Store.YES));
+			doc.add(new StringField(FIELD_DATASOURCE, p.getUri(), Field.Store.NO));
+			// keep the URI as doc value (to return with search hits)
+			doc.add(new SortedSetDocValuesField(FIELD_DATASOURCE, new BytesRef(p.getUri())));
 			// index names as well
 			for (String s : p.getName())
 				doc.add(new TextField(FIELD_DATASOURCE, s.toLowerCase(), Field.Store.NO));
@@ -620,8 +1818,8 @@ public class SearchEngine implements Indexer, Searcher {
 
 	private void addOrganisms(Set<BioSource> set, Document doc) {	
 		for(BioSource bs : set) {
-			// store URI as is (not indexed, untokinized)
-			doc.add(new StoredField(FIELD_ORGANISM, bs.getUri()));
+			// keep URI as is (not indexed, untokinized) doc value
+			doc.add(new SortedSetDocValuesField(FIELD_ORGANISM, new BytesRef(bs.getUri())));
 				
 			// add organism names
 			for(String s : bs.getName()) {
@@ -649,8 +1847,8 @@ public class SearchEngine implements Indexer, Searcher {
 
 	private void addPathways(Set<Pathway> set, Document doc) {
 		for(Pathway pw : set) {
-			//add URI as is (do not lowercase; do not index; store=yes - required to report hits, e.g., as xml)
-			doc.add(new StoredField(FIELD_PATHWAY, pw.getUri()));
+			//add URI as is (do not lowercase; do not index; doc value - required to report hits, e.g., as xml)
+			doc.add(new SortedSetDocValuesField(FIELD_PATHWAY, new BytesRef(pw.getUri())));
 			
 			// add names to the 'pathway' (don't store) and 'keywords' (store) indexes
 			for (String s : pw.getName()) {
@@ -687,6 +1885,60 @@ public class SearchEngine implements Indexer, Searcher {
 		return id;
 	}
 	
+	/*
+	 * Gets a search filter from the cache or creates and caches a new one.
+	 * Same (type, datasources, organisms) filter is reused across requests, 
+	 * so that the CachingWrapperFilter doc id sets (per index segment) get re-used too.
+	 * The cache is cleared when the index reader version changes 
+	 * (a filter used with an older reader may still get cached - that's ok, 
+	 * because it's not bound to any particular reader or segment).
+	 */
+	private Filter cachedFilter(long generation, Class<? extends BioPAXElement> type, 
+			String[] datasources, String[] organisms) 
+	{
+		if(generation != filterCacheGeneration) {
+			synchronized (filterCache) {
+				if(generation != filterCacheGeneration) {
+					filterCache.clear();
+					filterCacheGeneration = generation;
+				}
+			}
+		}
+		
+		final String key = filterKey(type, datasources, organisms);
+		if(key.isEmpty())
+			return null; //no filter
+		
+		Filter filter = filterCache.get(key);
+		if(filter == null) {
+			filter = createFilter(type, datasources, organisms);
+			filterCache.put(key, filter);
+		}
+		
+		return filter;
+	}
+
+	// normalized filter key: type|ds,ds..|org,org.. (sorted unique values in lower case)
+	private static String filterKey(Class<? extends BioPAXElement> type, 
+			String[] datasources, String[] organisms) 
+	{
+		final String ds = normalizedValues(datasources);
+		final String org = normalizedValues(organisms);
+		if(type == null && ds.isEmpty() && org.isEmpty())
+			return "";
+		return ((type != null) ? type.getSimpleName().toLowerCase() : "") + "|" + ds + "|" + org;
+	}
+
+	// sorted unique values in lower case, comma-separated (also used for the service cache keys)
+	static String normalizedValues(String[] values) {
+		if(values == null || values.length == 0)
+			return "";
+		Set<String> set = new TreeSet<String>();
+		for(String v : values)
+			set.add(v.trim().toLowerCase());
+		return StringUtils.join(set, ",");
+	}
+
 	/*
 	 * Creates a search filter like 
 	 * type AND (datasource OR datasource...) 
@@ -708,23 +1960,26 @@ public class SearchEngine implements Indexer, Searcher {
 			filterQuery.add(subQuery(organisms, FIELD_ORGANISM), Occur.MUST);
 		}		
 		//AND type	
-		if(type != null) { //add biopax class filter
-			BooleanQuery query = new BooleanQuery();
-			query.add(new TermQuery(new Term(FIELD_TYPE, type.getSimpleName().toLowerCase())), Occur.SHOULD);//OR
-			//for each biopax subclass (interface), add the name to the filter query
-			for(Class<? extends BioPAXElement> subType : SimpleEditorMap.L3.getKnownSubClassesOf(type)) {
-				query.add(new TermQuery(new Term(FIELD_TYPE, subType.getSimpleName().toLowerCase())), Occur.SHOULD);//OR
-			}		
-			filterQuery.add(query, Occur.MUST);
+		if(type != null) { //add biopax class filter (matches the type and its subclasses)
+			filterQuery.add(typeQuery(type), Occur.MUST);
 		}
 		
 		if(!filterQuery.clauses().isEmpty()) {
 			LOG.debug("filterQuery: " + filterQuery.toString());
-			return new CachingWrapperFilter( new QueryWrapperFilter(filterQuery) ); //TODO why CachingWrapperFilter, QueryWrapperFilter?
+			//caches the filter's doc id set per index segment (the filter itself is cached in the filterCache)
+			return new CachingWrapperFilter( new QueryWrapperFilter(filterQuery) );
 		} else 
 			return null;
 	}
 
+	/*
+	 * Matches objects of the biopax type or its sub-type
+	 * (all the super-types of an object are indexed in the 'typeall' field).
+	 */
+	private static Query typeQuery(Class<? extends BioPAXElement> type) {
+		return new TermQuery(new Term(FIELD_TYPEALL, type.getSimpleName().toLowerCase()));
+	}
+
 	/*
 	 * Values are joint with OR, but if a value
 	 * has whitespace symbols, it also make a sub-query,
@@ -1,5 +1,10 @@
 package cpath.service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.biopax.paxtools.model.BioPAXElement;
 
 import cpath.service.jaxb.SearchResponse;
@@ -18,4 +23,134 @@ public interface Searcher {
 	SearchResponse search(String query, int page,
   		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms);
 
+	/**
+	* Full-text search for BioPAX elements; optionally, also counts all the hits
+	* by datasource, organism and type (see {@link SearchResponse#getFacetCount()})
+	* in the same pass over the index.
+	* 
+	* @param query String (keywords or Lucene query string)
+	* @param page hits page number (when the number of hits exceeds a threshold)
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @param facets - whether to count the facets
+	* @return ordered list of hits (by score)
+	*/
+	SearchResponse search(String query, int page,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms, boolean facets);
+
+	/**
+	* Full-text search for BioPAX elements - the next hits page
+	* after the last hit of a previous page, which is pointed by the cursor
+	* (see {@link SearchResponse#getCursor()}). Unlike deep 'page' numbers,
+	* this costs the same for any page.
+	*
+	* @param query String (keywords or Lucene query string); same as in the previous query
+	* @param cursor search cursor from the previous page response
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return ordered list of hits (by score)
+	* @throws IllegalArgumentException when the cursor is invalid or expired (the index has changed)
+	*/
+	SearchResponse searchAfter(String query, String cursor,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms);
+
+	/**
+	* Same as {@link #searchAfter(String, String, Class, String[], String[])},
+	* and optionally counts the facets (see {@link SearchResponse#getFacetCount()}).
+	*
+	* @param query String (keywords or Lucene query string); same as in the previous query
+	* @param cursor search cursor from the previous page response
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @param facets - whether to count the facets
+	* @return ordered list of hits (by score)
+	* @throws IllegalArgumentException when the cursor is invalid or expired (the index has changed)
+	*/
+	SearchResponse searchAfter(String query, String cursor,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms, boolean facets);
+
+	/**
+	* Same as {@link #search(String, int, Class, String[], String[])} (when the cursor is null)
+	* or {@link #searchAfter(String, String, Class, String[], String[])}, but without 
+	* the search time limit, i.e., the hits are never partial; this is to go over all
+	* the hits, page by page, internally (not for user queries).
+	*
+	* @param query String (keywords or Lucene query string)
+	* @param cursor search cursor from the previous page response, or null - the first page
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return ordered list of hits (by score)
+	* @throws IllegalArgumentException when the cursor is invalid or expired (the index has changed)
+	*/
+	SearchResponse scan(String query, String cursor,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms);
+
+	/**
+	* Finds URIs of all BioPAX elements that match the query and filters,
+	* in a single pass over the index (no scoring, paging, or search hits;
+	* no time limit).
+	*
+	* @param query String (keywords or Lucene query string, or "*")
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return URIs (in no particular order)
+	*/
+	Collection<String> findAllUris(String query,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms);
+
+	/**
+	* Finds URIs of the physical entities and genes associated with
+	* the biological identifiers (e.g., to use as graph query sources).
+	*
+	* @param identifiers - HGNC symbols, UniProt, ChEBI, etc. IDs (case-insensitive)
+	* @return URIs
+	*/
+	Set<String> findUrisByIds(Collection<String> identifiers);
+
+	/**
+	* Type-ahead suggestions - names and gene symbols that contain words
+	* starting with the text, best (most popular) first; it does not use
+	* the full-text search (so it's very fast).
+	*
+	* @param text one or more words (the last one can be incomplete)
+	* @param max max. number of suggestions to return
+	* @return suggestions (empty when there are none or no suggester in the index)
+	*/
+	List<String> suggest(String text, int max);
+
+	/**
+	* Counts BioPAX elements that match the query and filters
+	* (no hits are collected).
+	*
+	* @param query String (keywords or Lucene query string, or "*")
+	* @param filterByType - class filter
+	* @param datasources  - filter by datasource
+	* @param organisms - filter by organism
+	* @return number of matching elements
+	*/
+	int count(String query,
+		Class<? extends BioPAXElement> filterByType, String[] datasources, String[] organisms);
+
+	/**
+	* Counts all BioPAX elements of each given type (incl. sub-types)
+	* per data source, in a single pass over the index (no time limit).
+	*
+	* @param types BioPAX types
+	* @return map: data source (Provenance) URI to the counts, in the order of types
+	*/
+	Map<String, int[]> countByDatasource(Collection<Class<? extends BioPAXElement>> types);
+
+	/**
+	* Gets the current version of the index (reader) used for searching;
+	* it changes when the index gets re-built or updated.
+	*
+	* @return index version or -1 when there is no index
+	*/
+	long getIndexVersion();
+
 }
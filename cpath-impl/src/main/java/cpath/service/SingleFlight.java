@@ -0,0 +1,163 @@
+package cpath.service;
+
+import static cpath.service.Status.INTERNAL_ERROR;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cpath.service.jaxb.DataResponse;
+import cpath.service.jaxb.ServiceResponse;
+
+/**
+ * Request coalescing: concurrent identical (by key) requests wait for
+ * a single in-flight computation, which the first of them runs,
+ * and share its result.
+ *
+ * Because the web controller deletes the result file after it's sent,
+ * when the computation is shared, each participant gets its own hard link
+ * to the file (or a copy, if links are not supported) in a {@link DataResponse},
+ * and the original file is deleted as soon as the last participant has got its link;
+ * when no one has joined, the only participant gets the original response.
+ *
+ * @author rodche
+ */
+final class SingleFlight {
+	private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	private final AtomicLong seq = new AtomicLong(); //to name the links
+	private final AtomicLong shared = new AtomicLong(); //no. requests that joined a flight
+
+	private final class Flight implements Callable<ServiceResponse> {
+		final String key;
+		final Callable<ServiceResponse> callable;
+		final FutureTask<ServiceResponse> task;
+		int participants = 1; //guarded by this
+		boolean joined; //someone has joined the leader; guarded by this
+		boolean closed; //no one can join anymore; guarded by this
+
+		Flight(String key, Callable<ServiceResponse> callable) {
+			this.key = key;
+			this.callable = callable;
+			this.task = new FutureTask<ServiceResponse>(this);
+		}
+
+		@Override
+		public ServiceResponse call() throws Exception {
+			try {
+				return callable.call();
+			} finally {
+				// done (before the result is available to the participants)
+				synchronized (this) {
+					closed = true;
+				}
+				flights.remove(key, this);
+			}
+		}
+	}
+
+	/**
+	 * Runs the computation or joins the same one in progress.
+	 *
+	 * @param key normalized request
+	 * @param callable computation
+	 * @return own result (can be an error response)
+	 */
+	ServiceResponse execute(String key, Callable<ServiceResponse> callable) {
+		Flight flight = null;
+		boolean leader = false;
+		while(flight == null) {
+			Flight f = flights.get(key);
+			if(f == null) {
+				Flight newFlight = new Flight(key, callable);
+				f = flights.putIfAbsent(key, newFlight);
+				if(f == null) {
+					flight = newFlight;
+					leader = true;
+					continue;
+				}
+			}
+			synchronized (f) {
+				if(!f.closed) {
+					f.participants++;
+					f.joined = true;
+					flight = f;
+					shared.incrementAndGet();
+				}
+			} //otherwise, it's just finished; try again
+		}
+
+		if(leader)
+			flight.task.run();
+
+		ServiceResponse result;
+		try {
+			result = flight.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result = new ErrorResponse(INTERNAL_ERROR, e);
+		} catch (ExecutionException e) {
+			result = new ErrorResponse(INTERNAL_ERROR, e.getCause());
+		}
+
+		return share(flight, result);
+	}
+
+	/**
+	 * @return number of requests that were served by another request's computation
+	 */
+	long getShared() {
+		return shared.get();
+	}
+
+	// gets this participant's own copy of the result
+	private ServiceResponse share(Flight flight, ServiceResponse result) {
+		synchronized (flight) {
+			flight.participants--;
+			if(!flight.joined || !(result instanceof DataResponse)
+					|| !(((DataResponse) result).getData() instanceof Path))
+				return result; //not shared or no file
+
+			final DataResponse dataResponse = (DataResponse) result;
+			final Path file = (Path) dataResponse.getData();
+			final Path out = file.resolveSibling(file.getFileName() + "." + seq.incrementAndGet());
+			try {
+				try {
+					Files.createLink(out, file);
+				} catch (UnsupportedOperationException e) {
+					Files.copy(file, out);
+				}
+			} catch (IOException e) {
+				LOG.error("share, failed to link or copy " + file + ": " + e);
+				return new ErrorResponse(INTERNAL_ERROR, e);
+			} finally {
+				if(flight.participants == 0)
+					delete(file); //everyone has got own link (or an error)
+			}
+
+			DataResponse dr = new DataResponse();
+			dr.setFormat(dataResponse.getFormat());
+			dr.setProviders(dataResponse.getProviders());
+			dr.setData(out);
+			return dr;
+		}
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			LOG.warn("delete, failed to delete " + file + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package cpath.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup.LookupResult;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+
+/**
+ * Type-ahead suggestions (completions) - names and gene symbols
+ * that contain words starting with the prefixes the user typed,
+ * ordered by weight (popularity), - using the small separate index
+ * of an {@link AnalyzingInfixSuggester}.
+ *
+ * It is built while indexing and saved in a sub-directory of the index directory.
+ *
+ * @author rodche
+ */
+final class Suggester implements Closeable {
+
+	/**
+	 * Sub-directory name (in the index directory).
+	 */
+	static final String DIR = "suggest";
+
+	private final AnalyzingInfixSuggester suggester;
+
+	private Suggester(AnalyzingInfixSuggester suggester) {
+		this.suggester = suggester;
+	}
+
+	/**
+	 * Gets the top suggestions.
+	 *
+	 * @param text prefix(es), i.e., one or more words, the last one being incomplete
+	 * @param max max. number of suggestions
+	 * @return suggestions, best first
+	 * @throws IOException
+	 */
+	List<String> suggest(String text, int max) throws IOException {
+		final List<String> suggestions = new ArrayList<String>(max);
+		for(LookupResult result : suggester.lookup(text, max, true, false))
+			suggestions.add(result.key.toString());
+		return suggestions;
+	}
+
+	@Override
+	public void close() throws IOException {
+		suggester.close();
+	}
+
+	/**
+	 * Opens the suggester (read-only) in the index directory.
+	 *
+	 * @param dir index directory
+	 * @param analyzer
+	 * @return suggester or null when there is none (e.g., older index)
+	 * @throws IOException when it cannot be open
+	 */
+	static Suggester open(File dir, Analyzer analyzer) throws IOException {
+		final File f = new File(dir, DIR);
+		if(!f.isDirectory())
+			return null;
+		return new Suggester(new AnalyzingInfixSuggester(Version.LATEST, FSDirectory.open(f), analyzer));
+	}
+
+	/**
+	 * Collects the suggestions (the same text, case-insensitive,
+	 * gets the total weight) and builds the suggester.
+	 */
+	static final class Builder {
+		private final Map<String, String> texts = new HashMap<String, String>(); //lowercase -> first seen text
+		private final Map<String, Long> weights = new HashMap<String, Long>();
+
+		Builder() {
+		}
+
+		void add(String text, long weight) {
+			if(text == null)
+				return;
+			text = text.replaceAll("\\s+", " ").trim();
+			if(text.isEmpty())
+				return;
+			final String key = text.toLowerCase();
+			final Long w = weights.get(key);
+			if(w == null) {
+				texts.put(key, text);
+				weights.put(key, weight);
+			} else {
+				weights.put(key, w + weight);
+			}
+		}
+
+		int size() {
+			return texts.size();
+		}
+
+		/**
+		 * Builds and saves the suggester to the index directory
+		 * (replaces the existing one, if any).
+		 *
+		 * @param dir index directory
+		 * @param analyzer
+		 * @throws IOException
+		 */
+		void write(File dir, Analyzer analyzer) throws IOException {
+			final File f = new File(dir, DIR);
+			CPathUtils.cleanupDirectory(f);
+			AnalyzingInfixSuggester suggester = new AnalyzingInfixSuggester(Version.LATEST, FSDirectory.open(f), analyzer);
+			try {
+				suggester.build(new Entries(texts, weights));
+			} finally {
+				suggester.close(); //commit
+			}
+		}
+	}
+
+	// suggester input - text and weight, no payloads or contexts
+	private static final class Entries implements InputIterator {
+		private final Iterator<Map.Entry<String, String>> iterator;
+		private final Map<String, Long> weights;
+		private long weight;
+
+		Entries(Map<String, String> texts, Map<String, Long> weights) {
+			this.iterator = texts.entrySet().iterator();
+			this.weights = weights;
+		}
+
+		@Override
+		public BytesRef next() throws IOException {
+			if(!iterator.hasNext())
+				return null;
+			final Map.Entry<String, String> e = iterator.next();
+			weight = weights.get(e.getKey());
+			return new BytesRef(e.getValue());
+		}
+
+		// the order does not matter (not used by this suggester)
+		@Override
+		public Comparator<BytesRef> getComparator() {
+			return null;
+		}
+
+		@Override
+		public long weight() {
+			return weight;
+		}
+
+		@Override
+		public BytesRef payload() {
+			return null;
+		}
+
+		@Override
+		public boolean hasPayloads() {
+			return false;
+		}
+
+		@Override
+		public Set<BytesRef> contexts() {
+			return null;
+		}
+
+		@Override
+		public boolean hasContexts() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.FixedBitSet;
+import org.biopax.paxtools.model.BioPAXElement;
+
+/**
+ * A Lucene hits collector that counts matching documents
+ * per data source (URI) and BioPAX type (incl. sub-types),
+ * for several types at once, in a single pass,
+ * using the 'typeall' field (all the super-types of a doc's type)
+ * and the 'datasource' doc values.
+ *
+ * @author rodche
+ */
+final class TypeDatasourceCounter extends Collector {
+
+	private final List<String> types; //'typeall' terms (lowercase simple names)
+	private final Map<String, int[]> counts; //datasource URI -> counts per type
+
+	//current segment state
+	private SortedSetDocValues datasourceValues;
+	private FixedBitSet[] typeDocs; //docs of the i-th type (or sub-type); null if there are none
+	private int[][] segmentCounts; //datasource ord -> counts per type
+
+	/**
+	 * Constructor.
+	 *
+	 * @param types BioPAX types to count (each type also counts its sub-types)
+	 */
+	TypeDatasourceCounter(Collection<Class<? extends BioPAXElement>> types) {
+		this.types = new ArrayList<String>(types.size());
+		for(Class<? extends BioPAXElement> type : types)
+			this.types.add(type.getSimpleName().toLowerCase());
+		this.counts = new HashMap<String, int[]>();
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		//scores are not used
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		if(datasourceValues == null)
+			return;
+
+		datasourceValues.setDocument(doc);
+		long ord;
+		while((ord = datasourceValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+			int[] c = segmentCounts[(int) ord];
+			for(int i = 0; i < typeDocs.length; i++)
+				if(typeDocs[i] != null && typeDocs[i].get(doc))
+					c[i]++;
+		}
+	}
+
+	@Override
+	public void setNextReader(AtomicReaderContext context) throws IOException {
+		flush();
+
+		datasourceValues = context.reader().getSortedSetDocValues(SearchEngine.FIELD_DATASOURCE);
+		if(datasourceValues == null)
+			return;
+
+		typeDocs = new FixedBitSet[types.size()];
+		for(int i = 0; i < typeDocs.length; i++) {
+			DocsEnum docs = context.reader().termDocsEnum(new Term(SearchEngine.FIELD_TYPEALL, types.get(i)));
+			if(docs == null)
+				continue;
+			typeDocs[i] = new FixedBitSet(context.reader().maxDoc());
+			int doc;
+			while((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS)
+				typeDocs[i].set(doc);
+		}
+
+		segmentCounts = new int[(int) datasourceValues.getValueCount()][types.size()];
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return true;
+	}
+
+	/**
+	 * Gets the counts, after the search is done.
+	 *
+	 * @return map: datasource URI to the array of counts (in the order of the types)
+	 */
+	Map<String, int[]> getCounts() {
+		flush();
+		return counts;
+	}
+
+	//adds the current segment counts to the totals
+	private void flush() {
+		if(segmentCounts == null)
+			return;
+
+		for(int ord = 0; ord < segmentCounts.length; ord++) {
+			final String datasource = datasourceValues.lookupOrd(ord).utf8ToString();
+			int[] total = counts.get(datasource);
+			if(total == null) {
+				total = new int[types.size()];
+				counts.put(datasource, total);
+			}
+			for(int i = 0; i < types.size(); i++)
+				total[i] += segmentCounts[ord][i];
+		}
+
+		segmentCounts = null;
+	}
+}
@@ -0,0 +1,53 @@
+package cpath.service;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * A Lucene hits collector that only reads the URI (doc value) of every matching document
+ * (no scoring, sorting or paging), and adds it to the given collection.
+ *
+ * @author rodche
+ */
+final class UriCollector extends Collector {
+
+	private final Collection<String> uris;
+	private BinaryDocValues uriValues;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param uris collection to add the URIs to
+	 */
+	UriCollector(Collection<String> uris) {
+		this.uris = uris;
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		//scores are not used
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		uris.add(uriValues.get(doc).utf8ToString());
+	}
+
+	@Override
+	public void setNextReader(AtomicReaderContext context) throws IOException {
+		uriValues = context.reader().getBinaryDocValues(SearchEngine.FIELD_URI);
+		if(uriValues == null)
+			throw new IllegalStateException("No '" + SearchEngine.FIELD_URI 
+				+ "' doc values in the index segment (re-index is required)");
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return true;
+	}
+}
@@ -0,0 +1,107 @@
+package cpath.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.junit.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+import cpath.config.CPathSettings;
+import cpath.service.jaxb.SearchResponse;
+import cpath.service.jaxb.ServiceResponse;
+
+public class CPathServiceImplTest {
+
+	static final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	final String indexLocation =
+		CPathSettings.getInstance().indexDir() + "_service";
+
+	@Test
+	public final void testSearchCache() throws IOException {
+		Model model = new SimpleIOHandler().convertFromOWL(resourceLoader
+			.getResource("classpath:merge/pathwaydata1.owl").getInputStream());
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation);
+		searchEngine.index();
+		CPathServiceImpl service = new CPathServiceImpl();
+		service.setModel(model);
+		service.setSearcher(searchEngine);
+
+		ServiceResponse res = service.search("ATP", 0, null, null, null);
+		assertTrue(res instanceof SearchResponse);
+		SearchResponse first = (SearchResponse) res;
+		assertFalse(first.isEmpty());
+		assertEquals(0, service.getSearchCacheHits());
+		assertEquals(1, service.getSearchCacheMisses());
+
+		//the same query (spaces, filter values order and case do not matter)
+		res = service.search(" ATP ", 0, null, null, null);
+		assertEquals(1, service.getSearchCacheHits());
+		SearchResponse second = (SearchResponse) res;
+		//a copy of the cached response
+		assertNotSame(first, second);
+		assertEquals(first.getNumHits(), second.getNumHits());
+		assertEquals(first.getSearchHit().size(), second.getSearchHit().size());
+		assertEquals(first.getSearchHit().get(0).getUri(), second.getSearchHit().get(0).getUri());
+		assertNotSame(first.getSearchHit().get(0), second.getSearchHit().get(0));
+
+		//changing a response does not change the cache
+		second.getSearchHit().clear();
+		second.setComment("foo");
+		SearchResponse third = (SearchResponse) service.search("ATP", 0, null, null, null);
+		assertEquals(2, service.getSearchCacheHits());
+		assertEquals(first.getSearchHit().size(), third.getSearchHit().size());
+		assertEquals(first.getComment(), third.getComment());
+
+		service.search("ATP", 0, Pathway.class, new String[]{"Foo", "bar"}, new String[]{"9606"});
+		assertEquals(2, service.getSearchCacheMisses());
+		service.search("ATP", 0, Pathway.class, new String[]{"BAR ", "foo"}, new String[]{"9606"});
+		assertEquals(3, service.getSearchCacheHits());
+
+		//other page, type or facets - another key
+		service.search("ATP", 1, null, null, null);
+		service.search("ATP", 0, null, null, null, true);
+		assertEquals(4, service.getSearchCacheMisses());
+
+		//no query - nothing to cache (and no NullPointerException)
+		service.search(null, 0, null, null, null);
+		service.search(null, 0, null, null, null);
+		assertEquals(3, service.getSearchCacheHits());
+		assertEquals(4, service.getSearchCacheMisses());
+
+		//new index version - the cache is cleared
+		long version = searchEngine.getIndexVersion();
+		searchEngine.index();
+		assertTrue(searchEngine.getIndexVersion() != version);
+		service.search("ATP", 0, null, null, null);
+		assertEquals(3, service.getSearchCacheHits());
+		assertEquals(5, service.getSearchCacheMisses());
+	}
+
+	@Test
+	public final void testNoSearcherYet() throws IOException {
+		Model model = new SimpleIOHandler().convertFromOWL(resourceLoader
+			.getResource("classpath:merge/pathwaydata1.owl").getInputStream());
+		//the model is loaded, but the index searcher is not ready yet
+		CPathServiceImpl service = new CPathServiceImpl();
+		service.setModel(model);
+		String[] ids = new String[]{"P62158"};
+
+		assertMaintenance(service.fetch(OutputFormat.BIOPAX, ids));
+		assertMaintenance(service.getNeighborhood(OutputFormat.BIOPAX, ids, 1, Direction.BOTHSTREAM, null, null));
+		assertMaintenance(service.getPathsBetween(OutputFormat.BIOPAX, ids, 1, null, null));
+		assertMaintenance(service.getPathsFromTo(OutputFormat.BIOPAX, ids, ids, 1, null, null));
+		assertMaintenance(service.getCommonStream(OutputFormat.BIOPAX, ids, 1, Direction.DOWNSTREAM, null, null));
+	}
+
+	private static void assertMaintenance(ServiceResponse res) {
+		assertTrue(res instanceof ErrorResponse);
+		assertEquals(Status.MAINTENANCE, ((ErrorResponse) res).getStatus());
+	}
+}
@@ -72,6 +72,36 @@ public class CPathUtilsTest {
 	}
 
 	
+	@Test
+	public void testCleanupDirectory() throws IOException {
+		File dir = new File(getClass().getClassLoader().getResource("").getPath()
+				+ File.separator + "testCleanupDirectory");
+		File sub = new File(dir, "sub");
+		sub.mkdirs();
+		new File(dir, "file").createNewFile();
+		new File(sub, "file").createNewFile();
+		assertEquals(2, dir.list().length);
+
+		CPathUtils.cleanupDirectory(dir);
+		assertTrue(dir.isDirectory());
+		assertEquals(0, dir.list().length); //the sub-directory is gone too
+		assertTrue(dir.delete());
+
+		CPathUtils.cleanupDirectory(dir); //creates the directory
+		assertTrue(dir.isDirectory());
+	}
+
+
+	@Test
+	public void testIsUri() {
+		assertTrue(CPathUtils.isUri("http://identifiers.org/uniprot/P62158"));
+		assertTrue(CPathUtils.isUri("https://www.example.org/Protein_1"));
+		assertTrue(CPathUtils.isUri("ftp://example.org/a"));
+		assertFalse(CPathUtils.isUri("P62158"));
+		assertFalse(CPathUtils.isUri("CHEBI:15377"));
+		assertFalse(CPathUtils.isUri("CID:5793"));
+	}
+	
 	@Test
 	public void testReadMetadata() throws IOException {
 		String url = "classpath:metadata.conf";
@@ -0,0 +1,278 @@
+package cpath.service;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Protein;
+import org.biopax.paxtools.model.level3.Provenance;
+import org.biopax.paxtools.model.level3.SmallMolecule;
+import org.biopax.paxtools.pattern.util.Blacklist;
+import org.biopax.paxtools.query.QueryExecuter;
+import org.biopax.paxtools.query.algorithm.Direction;
+import org.biopax.paxtools.query.algorithm.LimitType;
+import org.biopax.paxtools.query.wrapperL3.DataSourceFilter;
+import org.biopax.paxtools.query.wrapperL3.Filter;
+import org.biopax.paxtools.query.wrapperL3.OrganismFilter;
+import org.biopax.paxtools.query.wrapperL3.UbiqueFilter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+import cpath.config.CPathSettings;
+
+public class QueryGraphTest {
+
+	static final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	static Model model; //has complexes, two organisms
+	static Model kegg; //has catalyses, two data sources
+	static List<Protein> proteins; //sorted by URI
+
+	static final Comparator<BioPAXElement> BY_URI = new Comparator<BioPAXElement>() {
+		@Override
+		public int compare(BioPAXElement o1, BioPAXElement o2) {
+			return o1.getUri().compareTo(o2.getUri());
+		}
+	};
+
+	@BeforeClass
+	public static void init() throws IOException {
+		model = new SimpleIOHandler().convertFromOWL(resourceLoader
+			.getResource("classpath:NetPath_1.owl").getInputStream());
+		kegg = new SimpleIOHandler().convertFromOWL(resourceLoader
+			.getResource("classpath:hsa00010.owl").getInputStream());
+		proteins = new ArrayList<Protein>(model.getObjects(Protein.class));
+		Collections.sort(proteins, BY_URI);
+		assertTrue(proteins.size() > 10);
+	}
+
+	@Test
+	public final void testSameAsPaxtools() {
+		for(int limit : new int[]{0, 1, 2, 100}) {
+			assertSameAsPaxtools(model, null, null, null, limit);
+			assertSameAsPaxtools(kegg, null, null, null, limit);
+		}
+	}
+
+	@Test
+	public final void testSameAsPaxtoolsWithFilters() {
+		// organism (taxonomy id, name) and data source (URI) filters
+		final List<Provenance> dataSources = new ArrayList<Provenance>(kegg.getObjects(Provenance.class));
+		Collections.sort(dataSources, BY_URI);
+		assertEquals(2, dataSources.size());
+		for(int limit : new int[]{1, 100}) {
+			assertSameAsPaxtools(model, null, new String[]{"9606"}, null, limit);
+			assertSameAsPaxtools(model, null, new String[]{"10090"}, null, limit);
+			assertSameAsPaxtools(model, null, new String[]{"homo sapiens", "10090"}, null, limit);
+			assertSameAsPaxtools(kegg, null, null, new String[]{dataSources.get(0).getUri()}, limit);
+			assertSameAsPaxtools(kegg, null, new String[]{"9606"}, new String[]{dataSources.get(1).getUri()}, limit);
+		}
+	}
+
+	@Test
+	public final void testFilterValues() {
+		// data source URIs, names in other case, organism names, unknown values, and combinations
+		final List<Provenance> dataSources = new ArrayList<Provenance>(kegg.getObjects(Provenance.class));
+		Collections.sort(dataSources, BY_URI);
+		final List<String[]> datasources = new ArrayList<String[]>();
+		for(Provenance p : dataSources) {
+			datasources.add(new String[]{p.getUri()});
+			datasources.add(new String[]{p.getUri().toUpperCase()});
+			datasources.add(new String[]{p.getDisplayName()});
+			datasources.add(new String[]{p.getDisplayName().toLowerCase()});
+			datasources.add(new String[]{" " + p.getDisplayName() + " "});
+		}
+		datasources.add(new String[]{"foo"});
+		datasources.add(new String[]{dataSources.get(0).getDisplayName(), dataSources.get(1).getUri()});
+		datasources.add(new String[]{"foo", dataSources.get(1).getDisplayName().toUpperCase(),
+			dataSources.get(1).getUri(), dataSources.get(1).getUri()});
+		final String[][] organisms = new String[][]{
+			null, {"9606"}, {"Homo sapiens"}, {"homo sapiens (human)"}, {"10090"}, {"foo", "9606"}};
+
+		// the same graph (and precomputed or cached filter bitsets, which the queries must not change)
+		final QueryGraph graph = QueryGraph.build(kegg, null, CPathSettings.DEFAULT_QUERY_WORKSPACES);
+		for(String[] o : organisms)
+			assertSameAsPaxtools(graph, kegg, null, o, null, 2);
+		for(String[] d : datasources) {
+			assertSameAsPaxtools(graph, kegg, null, null, d, 2);
+			assertSameAsPaxtools(graph, kegg, null, new String[]{"9606"}, d, 2);
+		}
+
+		final QueryGraph netpath = QueryGraph.build(model, null, CPathSettings.DEFAULT_QUERY_WORKSPACES);
+		for(String[] o : organisms)
+			assertSameAsPaxtools(netpath, model, null, o, new String[]{"NetPath"}, 1);
+	}
+
+	@Test
+	public final void testSameAsPaxtoolsWithBlacklist() {
+		// the molecules that take part in most interactions
+		final List<SmallMolecule> molecules = new ArrayList<SmallMolecule>(kegg.getObjects(SmallMolecule.class));
+		Collections.sort(molecules, new Comparator<SmallMolecule>() {
+			@Override
+			public int compare(SmallMolecule o1, SmallMolecule o2) {
+				final int c = o2.getParticipantOf().size() - o1.getParticipantOf().size();
+				return (c != 0) ? c : o1.getUri().compareTo(o2.getUri());
+			}
+		});
+		final Blacklist blacklist = new Blacklist();
+		for(SmallMolecule sm : molecules.subList(0, 3))
+			blacklist.addEntry(sm.getUri(), 1, null);
+
+		for(int limit : new int[]{1, 2, 100}) {
+			assertSameAsPaxtools(kegg, blacklist, null, null, limit);
+			assertSameAsPaxtools(kegg, blacklist, new String[]{"9606"}, null, limit);
+		}
+	}
+
+	@Test
+	public final void testConcurrentQueries() throws Exception {
+		// more concurrent queries than the idle workspaces kept
+		final QueryGraph graph = QueryGraph.build(model, null, 1);
+
+		// seeds: proteins, their references and a pathway (cannot be wrapped)
+		final List<Set<BioPAXElement>> seeds = new ArrayList<Set<BioPAXElement>>();
+		for(int i = 0; i < proteins.size(); i += 5) {
+			Set<BioPAXElement> seed = new HashSet<BioPAXElement>();
+			seed.add(proteins.get(i));
+			if(proteins.get(i).getEntityReference() != null)
+				seed.add(proteins.get(i).getEntityReference());
+			seed.add(proteins.get((i + 1) % proteins.size()));
+			seeds.add(seed);
+		}
+		seeds.add(new HashSet<BioPAXElement>(model.getObjects(Pathway.class)));
+
+		final List<Set<BioPAXElement>> expected = new ArrayList<Set<BioPAXElement>>();
+		for(Set<BioPAXElement> seed : seeds) {
+			expected.add(graph.runNeighborhood(seed, 2, Direction.BOTHSTREAM, null, null));
+			expected.add(graph.runNeighborhood(seed, 1, Direction.UNDIRECTED, null, null));
+			expected.add(graph.runPathsBetween(seed, 3, null, null));
+		}
+		int found = 0;
+		for(Set<BioPAXElement> result : expected)
+			found += result.size();
+		assertTrue(found > 0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for(int t = 0; t < 8; t++) {
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					int mismatches = 0;
+					for(int run = 0; run < 20; run++) {
+						int k = 0;
+						for(Set<BioPAXElement> seed : seeds) {
+							if(!expected.get(k++).equals(
+									graph.runNeighborhood(seed, 2, Direction.BOTHSTREAM, null, null)))
+								mismatches++;
+							if(!expected.get(k++).equals(
+									graph.runNeighborhood(seed, 1, Direction.UNDIRECTED, null, null)))
+								mismatches++;
+							if(!expected.get(k++).equals(graph.runPathsBetween(seed, 3, null, null)))
+								mismatches++;
+						}
+					}
+					return mismatches;
+				}
+			}));
+		}
+		for(Future<Integer> f : futures)
+			assertEquals(0, f.get().intValue());
+		executor.shutdown();
+	}
+
+	/*
+	 * Runs all the graph queries (every kind and direction) from some seed sets
+	 * with QueryGraph and with paxtools QueryExecuter (with the same filters
+	 * as CPathServiceImpl uses) and checks the results are the same.
+	 */
+	private static void assertSameAsPaxtools(Model model, Blacklist blacklist,
+			String[] organisms, String[] datasources, int limit)
+	{
+		assertSameAsPaxtools(QueryGraph.build(model, blacklist, CPathSettings.DEFAULT_QUERY_WORKSPACES),
+				model, blacklist, organisms, datasources, limit);
+	}
+
+	private static void assertSameAsPaxtools(QueryGraph graph, Model model, Blacklist blacklist,
+			String[] organisms, String[] datasources, int limit)
+	{
+		final List<Filter> list = new ArrayList<Filter>();
+		if(blacklist != null)
+			list.add(new UbiqueFilter(blacklist.getListed()));
+		if(organisms != null)
+			list.add(new OrganismFilter(organisms));
+		if(datasources != null)
+			list.add(new DataSourceFilter(datasources));
+		final Filter[] filters = list.toArray(new Filter[list.size()]);
+
+		for(Set<BioPAXElement> seed : seeds(model)) {
+			final String msg = "limit: " + limit + ", organisms: " + Arrays.toString(organisms)
+				+ ", datasources: " + Arrays.toString(datasources) + ", seed: " + uris(seed) + ", ";
+
+			for(Direction direction : new Direction[]{Direction.UPSTREAM, Direction.DOWNSTREAM,
+					Direction.BOTHSTREAM, Direction.UNDIRECTED})
+				assertEquals(msg + "neighborhood " + direction,
+					uris(QueryExecuter.runNeighborhood(seed, model, limit, direction, filters)),
+					uris(graph.runNeighborhood(seed, limit, direction, organisms, datasources)));
+
+			assertEquals(msg + "pathsbetween",
+				uris(QueryExecuter.runPathsBetween(seed, model, limit, filters)),
+				uris(graph.runPathsBetween(seed, limit, organisms, datasources)));
+
+			for(Direction direction : new Direction[]{Direction.UPSTREAM, Direction.DOWNSTREAM})
+				assertEquals(msg + "commonstream " + direction,
+					uris(QueryExecuter.runCommonStreamWithPOI(seed, model, direction, limit, filters)),
+					uris(graph.runCommonStreamWithPOI(seed, direction, limit, organisms, datasources)));
+
+			final List<BioPAXElement> elements = new ArrayList<BioPAXElement>(seed);
+			Collections.sort(elements, BY_URI);
+			final Set<BioPAXElement> source = Collections.singleton(elements.get(0));
+			final Set<BioPAXElement> target = new HashSet<BioPAXElement>(elements.subList(1, elements.size()));
+			assertEquals(msg + "pathsfromto",
+				uris(QueryExecuter.runPathsFromTo(source, target, model, LimitType.NORMAL, limit, filters)),
+				uris(graph.runPathsFromTo(source, target, limit, organisms, datasources)));
+		}
+	}
+
+	// seed sets: pairs and triples of physical entities (of different kinds), sorted by URI
+	private static List<Set<BioPAXElement>> seeds(Model model) {
+		final List<PhysicalEntity> pes = new ArrayList<PhysicalEntity>(model.getObjects(PhysicalEntity.class));
+		Collections.sort(pes, BY_URI);
+		assertTrue(pes.size() > 10);
+		final List<Set<BioPAXElement>> seeds = new ArrayList<Set<BioPAXElement>>();
+		final int step = pes.size() / 7;
+		for(int i = 0; i + 2 * step < pes.size(); i += step) {
+			seeds.add(new HashSet<BioPAXElement>(Arrays.asList(pes.get(i), pes.get(i + step))));
+			seeds.add(new HashSet<BioPAXElement>(Arrays.asList(pes.get(i), pes.get(i + 1), pes.get(i + 2 * step))));
+		}
+		return seeds;
+	}
+
+	// sorted URIs (to compare and print the results)
+	private static List<String> uris(Collection<BioPAXElement> elements) {
+		final List<String> uris = new ArrayList<String>();
+		for(BioPAXElement e : elements)
+			uris.add(e.getUri());
+		Collections.sort(uris);
+		return uris;
+	}
+}
@@ -0,0 +1,129 @@
+package cpath.service;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cpath.service.jaxb.DataResponse;
+
+public class ResultCacheTest {
+
+	File cacheDir;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = new File(getClass().getClassLoader().getResource("").getPath()
+				+ File.separator + "testResultCache");
+		CPathUtils.cleanupDirectory(cacheDir);
+	}
+
+	@Test
+	public final void testOwnSubdirectory() throws IOException {
+		// a file of another component in the shared cache dir
+		File other = new File(cacheDir, "other.txt");
+		assertTrue(other.createNewFile());
+		// files left in the results dir by the previous run
+		File results = new File(cacheDir, ResultCache.SUBDIR);
+		assertTrue(results.mkdir());
+		File stale = new File(results, "12.owl");
+		assertTrue(stale.createNewFile());
+		File foreign = new File(results, "readme");
+		assertTrue(foreign.createNewFile());
+
+		ResultCache cache = new ResultCache(cacheDir, 100);
+		assertTrue(other.exists());
+		assertTrue(foreign.exists());
+		assertFalse(stale.exists());
+
+		cache.put("a", response(10));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertTrue(other.exists());
+		assertEquals(Arrays.asList("readme"), Arrays.asList(results.list()));
+	}
+
+	@Test
+	public final void testEvictionByBytes() throws IOException {
+		ResultCache cache = new ResultCache(cacheDir, 25);
+		cache.put("a", response(10));
+		cache.put("b", response(10));
+		assertEquals(2, cache.size());
+		assertEquals(20, cache.getBytes());
+
+		// 'a' becomes the most recently used, so 'b' is evicted
+		DataResponse dr = cache.get("a");
+		assertNotNull(dr);
+		Files.delete((Path) dr.getData()); //as the web controller does
+		cache.put("c", response(10));
+		assertEquals(2, cache.size());
+		assertEquals(20, cache.getBytes());
+		assertNull(cache.get("b"));
+		assertNotNull(dr = cache.get("a"));
+		Files.delete((Path) dr.getData());
+		assertNotNull(dr = cache.get("c"));
+		Files.delete((Path) dr.getData());
+
+		// evicts both
+		cache.put("d", response(25));
+		assertEquals(1, cache.size());
+		assertEquals(25, cache.getBytes());
+		assertNull(cache.get("a"));
+		assertNull(cache.get("c"));
+
+		// larger than the cache - not cached
+		cache.put("e", response(26));
+		assertNull(cache.get("e"));
+		assertEquals(1, cache.size());
+		assertEquals(25, cache.getBytes());
+
+		// the only file left is the cached one
+		assertEquals(1, new File(cacheDir, ResultCache.SUBDIR).list().length);
+	}
+
+	@Test
+	public final void testGetAfterEvict() throws IOException {
+		ResultCache cache = new ResultCache(cacheDir, 15);
+		cache.put("a", response(10));
+		DataResponse dr = cache.get("a");
+		assertNotNull(dr);
+		assertEquals(OutputFormat.BIOPAX, dr.getFormat());
+		assertEquals(Collections.singleton("test"), dr.getProviders());
+		Path data = (Path) dr.getData();
+
+		cache.put("b", response(10)); //evicts 'a'
+		assertEquals(1, cache.size());
+		long misses = cache.getMisses();
+		assertNull(cache.get("a"));
+		assertEquals(misses + 1, cache.getMisses());
+
+		// the result got before the eviction is still there
+		assertTrue(Files.exists(data));
+		assertEquals(10, Files.size(data));
+		Files.delete(data);
+
+		// put again
+		cache.put("a", response(10));
+		assertNotNull(dr = cache.get("a"));
+		Files.delete((Path) dr.getData());
+		assertNull(cache.get("b"));
+	}
+
+	// a query result file (outside the cache dir) of the given size
+	private DataResponse response(int size) throws IOException {
+		Path data = Files.createTempFile(cacheDir.toPath(), "result", ".owl");
+		Files.write(data, new byte[size]);
+		DataResponse dr = new DataResponse();
+		dr.setFormat(OutputFormat.BIOPAX);
+		dr.setProviders(Collections.singleton("test"));
+		dr.setData(data);
+		return dr;
+	}
+}
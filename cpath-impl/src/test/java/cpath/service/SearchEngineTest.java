@@ -4,12 +4,41 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.Version;
+import org.biopax.paxtools.controller.Fetcher;
+import org.biopax.paxtools.controller.ModelUtils;
+import org.biopax.paxtools.controller.SimpleEditorMap;
 import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.BiochemicalReaction;
+import org.biopax.paxtools.model.level3.Control;
 import org.biopax.paxtools.model.level3.Interaction;
 import org.biopax.paxtools.model.level3.Pathway;
+import org.biopax.paxtools.model.level3.PathwayStep;
 import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Process;
+import org.biopax.paxtools.model.level3.Protein;
 import org.biopax.paxtools.model.level3.Provenance;
 import org.biopax.paxtools.model.level3.SmallMoleculeReference;
 import org.junit.Test;
@@ -17,6 +46,7 @@ import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.ResourceLoader;
 
 import cpath.config.CPathSettings;
+import cpath.service.jaxb.FacetCount;
 import cpath.service.jaxb.SearchHit;
 import cpath.service.jaxb.SearchResponse;
 
@@ -32,9 +62,21 @@ public class SearchEngineTest {
 		SimpleIOHandler reader = new SimpleIOHandler();
 		Model model = reader.convertFromOWL(resourceLoader
 			.getResource("classpath:merge/pathwaydata1.owl").getInputStream());
+		//IDs associated with a protein (normally, added by the service using xrefs and id-mapping)
+		Protein protein = model.getObjects(Protein.class).iterator().next();
+		
 		SearchEngine searchEngine = new SearchEngine(model, indexLocation);
+		searchEngine.setOtherIds(Collections.<String, Set<String>>singletonMap(protein.getUri(), 
+				new HashSet<String>(Arrays.asList("TESTID1"))));
 		searchEngine.index();
 		assertTrue(new File(indexLocation).exists());
+		assertTrue(new File(indexLocation, IdResolver.FILE).exists());
+		assertTrue(searchEngine.findUrisByIds(Arrays.asList("testid1", "foo")).contains(protein.getUri()));
+		assertTrue(searchEngine.findUrisByIds(Arrays.asList("foo")).isEmpty());
+		//type-ahead suggestions
+		assertTrue(new File(indexLocation, Suggester.DIR).isDirectory());
+		assertFalse(searchEngine.suggest("h2a", 10).isEmpty());
+		assertTrue(searchEngine.suggest("foo", 10).isEmpty());
 		
 		SearchResponse response = searchEngine.search("ATP", 0, null, null, null);
 		assertNotNull(response);
@@ -69,11 +111,33 @@ public class SearchEngineTest {
 		assertNotNull(response);
 		assertFalse(response.isEmpty());
 		assertEquals(1, response.getSearchHit().size());
+		assertTrue(response.getFacetCount().isEmpty()); //not requested
+		
+		//same, with facets (counts by datasource, organism, type)
+		response = searchEngine.search("*", 0, Pathway.class, null, null, true);
+		assertFalse(response.getFacetCount().isEmpty());
+		boolean typeFacetFound = false;
+		for(FacetCount fc : response.getFacetCount()) {
+			if(SearchEngine.FIELD_TYPE.equals(fc.getField())) {
+				assertEquals("pathway", fc.getValue());
+				assertEquals(1, fc.getCount().intValue());
+				typeFacetFound = true;
+			}
+		}
+		assertTrue(typeFacetFound);
 		
 		//find all objects (this here works with page=0 as long as the 
 		//total no. objects in the test model < max hits per page)
 		response = searchEngine.search("*", 0, null, null, null);
 		assertEquals(23, response.getSearchHit().size()); //only Entity and ER types (since 23/12/2015)
+		//same, but only URIs, all at once
+		assertEquals(23, searchEngine.findAllUris("*", null, null, null).size());
+		assertEquals(5, searchEngine.findAllUris("ATP", null, null, null).size());
+		//leading wildcard queries use the reversed tokens fields
+		assertTrue(searchEngine.findAllUris("*TP", null, null, null)
+				.containsAll(searchEngine.findAllUris("ATP", null, null, null)));
+		assertTrue(searchEngine.findAllUris("?tp", null, null, null)
+				.containsAll(searchEngine.findAllUris("ATP", null, null, null)));
 			
 		response = searchEngine.search("*", 0, PhysicalEntity.class, null, null);
 		assertEquals(8, response.getSearchHit().size());
@@ -101,6 +165,17 @@ public class SearchEngineTest {
 		response = searchEngine.search("*", 0, Pathway.class, new String[] {"http://identifiers.org/kegg.pathway/"}, null);
 		assertFalse(response.isEmpty());
 		assertEquals(1, response.getSearchHit().size());
+		assertEquals(1, searchEngine.count("*", Pathway.class, new String[] {"http://identifiers.org/kegg.pathway/"}, null));
+		assertEquals(1, searchEngine.countByDatasource(
+				Arrays.<Class<? extends BioPAXElement>>asList(Pathway.class, Provenance.class))
+				.get("http://identifiers.org/kegg.pathway/")[0]);
+		assertEquals(23, searchEngine.count("*", null, null, null));
+		assertEquals(5, searchEngine.count("ATP", null, null, null));
+		//same filter again - from the cache
+		long filterCacheHits = searchEngine.getFilterCacheHits();
+		response = searchEngine.search("*", 0, Pathway.class, new String[] {"http://identifiers.org/kegg.pathway/"}, null);
+		assertEquals(1, response.getSearchHit().size());
+		assertEquals(filterCacheHits + 1, searchEngine.getFilterCacheHits());
 		
 		response = searchEngine.search("pathway:glycolysis", 0, SmallMoleculeReference.class, null, null);
 		assertEquals(5, response.getSearchHit().size());
@@ -116,6 +191,421 @@ public class SearchEngineTest {
 		response = searchEngine.search("*", 1, null, null, null);
 		assertEquals(10, response.getSearchHit().size());
 		assertEquals(1, response.getPageNo().intValue());
+		
+		//same, using the search cursor (next page after the last hit of page 0)
+		SearchResponse page0 = searchEngine.search("*", 0, null, null, null);
+		assertNotNull(page0.getCursor());
+		SearchResponse page1 = searchEngine.searchAfter("*", page0.getCursor(), null, null, null);
+		assertEquals(1, page1.getPageNo().intValue());
+		assertEquals(10, page1.getSearchHit().size());
+		assertEquals(response.getSearchHit().get(0).getUri(), page1.getSearchHit().get(0).getUri());
+		response = searchEngine.searchAfter("*", page1.getCursor(), null, null, null);
+		assertEquals(2, response.getPageNo().intValue());
+		assertEquals(3, response.getSearchHit().size());
+		assertEquals(23, response.getNumHits().intValue());
+	}
+
+	@Test
+	public final void testOldIndex() throws IOException {
+		Model model = model();
+		final String location = indexLocation + "_old";
+		// an index built by an older version (no 'uri' doc values or 'typeall' field)
+		CPathUtils.cleanupDirectory(new File(location));
+		IndexWriter writer = new IndexWriter(FSDirectory.open(new File(location)),
+			new IndexWriterConfig(Version.LATEST, new StandardAnalyzer()));
+		Document doc = new Document();
+		doc.add(new StringField(SearchEngine.FIELD_URI, 
+			model.getObjects(Protein.class).iterator().next().getUri(), Field.Store.YES));
+		writer.addDocument(doc);
+		writer.close();
+
+		// it is not used (all the queries fail the same way)
+		SearchEngine searchEngine = new SearchEngine(model, location);
+		try {
+			searchEngine.search("*", 0, null, null, null);
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("re-index is required"));
+		}
+		try {
+			searchEngine.findAllUris("*", Protein.class, null, null);
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("re-index is required"));
+		}
+
+		// until it's re-indexed
+		searchEngine.index();
+		assertFalse(searchEngine.search("*", 0, Protein.class, null, null).isEmpty());
+	}
+
+	@Test
+	public final void testWarmUp() throws IOException {
+		Model model = model();
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "_warmup");
+		searchEngine.index();
+		
+		//run some queries (a bad one is skipped) with the new searcher
+		searchEngine.warmUp(Arrays.asList("ATP", "*", "bad query ("));
+		assertEquals(5, searchEngine.search("ATP", 0, null, null, null).getNumHits().intValue());
+		
+		//also preload the index files
+		searchEngine.setPreload(true);
+		searchEngine.warmUp(Arrays.asList("ATP"));
+		assertEquals(5, searchEngine.search("ATP", 0, null, null, null).getNumHits().intValue());
+		
+		//the warm-up queries run also with the searcher of a new index
+		searchEngine.index();
+		assertEquals(23, searchEngine.count("*", null, null, null));
+	}
+
+	@Test
+	public final void testIndexSwap() throws Exception {
+		final Model model = model();
+		final String location = indexLocation + "_swap";
+		final SearchEngine searchEngine = new SearchEngine(model, location);
+		searchEngine.index();
+		
+		//searches continue (using the current index) during the re-build and the switch
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final AtomicBoolean done = new AtomicBoolean();
+		final Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while(!done.get()) {
+							assertEquals(23, searchEngine.count("*", null, null, null));
+							assertEquals(5, searchEngine.search("ATP", 0, null, null, null).getNumHits().intValue());
+						}
+					} catch (Throwable t) {
+						error.set(t);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for(int i = 0; i < 3; i++)
+			searchEngine.index();
+		done.set(true);
+		for(Thread t : threads)
+			t.join();
+		assertNull(error.get());
+		
+		//the new index replaced the current one, which is kept as backup
+		assertTrue(new File(location + ".old").exists());
+		assertFalse(new File(location + ".new").exists());
+		assertEquals(23, searchEngine.count("*", null, null, null));
+		
+		//another instance (e.g., the web service) switches to the index re-built by this one (e.g., admin tool)
+		SearchEngine other = new SearchEngine(model, location);
+		other.setIndexCheckInterval(0);
+		assertEquals(23, other.count("*", null, null, null));
+		model.remove(model.getObjects(Pathway.class).iterator().next());
+		searchEngine.index();
+		assertEquals(22, searchEngine.count("*", null, null, null));
+		final long end = System.currentTimeMillis() + 10000;
+		while(other.count("*", null, null, null) != 22 && System.currentTimeMillis() < end)
+			Thread.sleep(100); //it switches in the background
+		assertEquals(22, other.count("*", null, null, null));
+		
+		//previous backups are deleted later (after a few index check intervals)
+		searchEngine.setIndexCheckInterval(0);
+		Thread.sleep(10);
+		searchEngine.index();
+		final String retired = new File(location).getName() + ".old.";
+		int numRetired = 0;
+		for(File f : new File(location).getAbsoluteFile().getParentFile().listFiles())
+			if(f.getName().startsWith(retired))
+				numRetired++;
+		assertEquals(1, numRetired); //the one just retired
+	}
+
+	@Test
+	public final void testUpdate() throws IOException {
+		final String kegg = "http://identifiers.org/kegg.pathway/";
+		Model model = model();
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "_update");
+		searchEngine.index();
+		
+		//incremental update (re-index objects of one data source) does not add duplicates
+		long version = searchEngine.getIndexVersion();
+		searchEngine.update(kegg);
+		assertTrue(searchEngine.getIndexVersion() > version);
+		assertEquals(23, searchEngine.count("*", null, null, null));
+		assertEquals(1, searchEngine.count("*", Pathway.class, new String[] {kegg}, null));
+		
+		//changed objects of the data source are re-indexed
+		Pathway pathway = model.getObjects(Pathway.class).iterator().next();
+		pathway.setDisplayName("foobarpathway");
+		assertEquals(0, searchEngine.count("foobarpathway", null, null, null));
+		searchEngine.update(kegg);
+		assertEquals(1, searchEngine.count("foobarpathway", Pathway.class, null, null));
+		assertEquals(23, searchEngine.count("*", null, null, null));
+		
+		//and those no longer in the model are deleted
+		model.remove(pathway);
+		searchEngine.update(kegg);
+		assertEquals(0, searchEngine.count("*", Pathway.class, null, null));
+		assertEquals(22, searchEngine.count("*", null, null, null));
+	}
+
+	@Test
+	public final void testIndexThreads() throws IOException {
+		Model model = model();
+		Protein protein = model.getObjects(Protein.class).iterator().next();
+		Map<String, Set<String>> otherIds = Collections.<String, Set<String>>singletonMap(protein.getUri(), 
+				new HashSet<String>(Arrays.asList("TESTID1")));
+		
+		SearchEngine single = new SearchEngine(model, indexLocation + "_threads1");
+		single.setIndexThreads(1);
+		single.setOtherIds(otherIds);
+		single.index();
+		
+		SearchEngine multi = new SearchEngine(model, indexLocation + "_threads4");
+		multi.setIndexThreads(4);
+		multi.setOtherIds(otherIds);
+		multi.index();
+		//the pre-computed IDs are used by the indexer, not put in (or removed from) the model
+		assertFalse(protein.getAnnotations().containsKey(SearchEngine.FIELD_XREFID));
+		
+		//the same index, whatever the no. threads
+		for(String q : Arrays.asList("*", "ATP", "xrefid:testid1")) {
+			assertEquals(q, single.count(q, null, null, null), multi.count(q, null, null, null));
+			assertEquals(q, new HashSet<String>(single.findAllUris(q, null, null, null)), 
+					new HashSet<String>(multi.findAllUris(q, null, null, null)));
+		}
+		assertEquals(1, multi.count("xrefid:testid1", null, null, null));
+		assertEquals(single.findUrisByIds(Arrays.asList("testid1")), multi.findUrisByIds(Arrays.asList("testid1")));
+		
+		Collection<Class<? extends BioPAXElement>> types = Arrays.<Class<? extends BioPAXElement>>asList(
+				Pathway.class, Interaction.class, PhysicalEntity.class);
+		Map<String, int[]> expected = single.countByDatasource(types);
+		Map<String, int[]> actual = multi.countByDatasource(types);
+		assertEquals(expected.keySet(), actual.keySet());
+		for(String ds : expected.keySet())
+			assertArrayEquals(ds, expected.get(ds), actual.get(ds));
+		
+		//cannot search after closed
+		single.close();
+		assertTrue(single.suggest("h2a", 10).isEmpty());
+		try {
+			single.count("*", null, null, null);
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {}
+		multi.close();
+	}
+
+	@Test
+	public final void testSearchTimeLimit() throws IOException {
+		Model model = model();
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "_timeout");
+		searchEngine.index();
+		assertEquals(CPathSettings.DEFAULT_SEARCH_TIME_LIMIT_MS, searchEngine.getSearchTimeLimit());
+		SearchResponse response = searchEngine.search("*", 0, null, null, null);
+		assertFalse(response.isPartial());
+		assertEquals(23, response.getSearchHit().size());
+		
+		//a clock that ticks every time it's checked (i.e., once per collected doc)
+		searchEngine.setSearchClock(new Counter() {
+			private long time;
+			@Override
+			public long addAndGet(long delta) {
+				return time += delta;
+			}
+			@Override
+			public long get() {
+				return ++time;
+			}
+		});
+		searchEngine.setSearchTimeLimit(5);
+		//timed out: the hits collected so far are returned
+		response = searchEngine.search("*", 0, null, null, null);
+		assertTrue(response.isPartial());
+		assertFalse(response.isEmpty());
+		assertTrue(response.getSearchHit().size() < 23);
+		//internal scans are not limited
+		response = searchEngine.scan("*", null, null, null, null);
+		assertFalse(response.isPartial());
+		assertEquals(23, response.getSearchHit().size());
+		assertTrue(searchEngine.scan("*", response.getCursor(), null, null, null).isEmpty());
+		assertEquals(23, searchEngine.findAllUris("*", null, null, null).size());
+		assertEquals(23, searchEngine.count("*", null, null, null));
+		
+		//no limit
+		searchEngine.setSearchTimeLimit(0);
+		response = searchEngine.search("*", 0, null, null, null);
+		assertFalse(response.isPartial());
+		assertEquals(23, response.getSearchHit().size());
+	}
+
+	@Test
+	public final void testIdResolver() throws IOException {
+		IdResolver.Builder builder = new IdResolver.Builder();
+		builder.add("http://a", Arrays.asList("P1", "p1", "Q1"));
+		builder.add("http://b", Arrays.asList("p1"));
+		builder.add("http://a", Arrays.asList("P1"));
+		IdResolver resolver = builder.build();
+		assertEquals(2, resolver.numIds());
+		assertEquals(2, resolver.numUris());
+		
+		//no duplicates
+		List<String> uris = new ArrayList<String>();
+		resolver.resolve("P1", uris);
+		assertEquals(Arrays.asList("http://a", "http://b"), uris);
+		uris.clear();
+		resolver.resolve("q1", uris);
+		assertEquals(Arrays.asList("http://a"), uris);
+		
+		//same after an update (re-adding some, excluding other objects)
+		builder = new IdResolver.Builder(resolver, Collections.singleton("http://b"));
+		builder.add("http://a", Arrays.asList("p1"));
+		resolver = builder.build();
+		uris.clear();
+		resolver.resolve("p1", uris);
+		assertEquals(Arrays.asList("http://a"), uris);
+	}
+
+	@Test
+	public final void testPathwayAncestry() throws IOException {
+		Model model = model();
+		//parent pathways, computed for all the model objects at once
+		PathwayAncestry ancestry = PathwayAncestry.build(model);
+		Pathway pathway = model.getObjects(Pathway.class).iterator().next();
+		assertTrue(ancestry.getParentPathways(pathway).isEmpty());
+		for(Interaction it : model.getObjects(Interaction.class))
+			assertTrue(ancestry.getParentPathways(it).contains(pathway));
+		//includes those found by the paxtools utility (one object at a time)
+		for(SmallMoleculeReference smr : model.getObjects(SmallMoleculeReference.class))
+			assertTrue(ancestry.getParentPathways(smr).containsAll(ModelUtils.getParentPathways(smr)));
+		for(PhysicalEntity pe : model.getObjects(PhysicalEntity.class))
+			assertTrue(ancestry.getParentPathways(pe).containsAll(ModelUtils.getParentPathways(pe)));
+	}
+
+	@Test
+	public final void testKeywordAggregator() throws IOException {
+		Model model = model();
+		//keywords of an object and its children (memoized)
+		Pathway pathway = model.getObjects(Pathway.class).iterator().next();
+		KeywordAggregator aggregator = new KeywordAggregator(4, SearchEngine.KEYWORD_PROPERTIES, 1000);
+		assertTrue(aggregator.getKeywords(pathway).contains("glucose degradation"));
+		assertEquals(aggregator.getKeywords(pathway), aggregator.getKeywords(pathway));
+		assertTrue(aggregator.size() > 0);
+		
+		//same keywords when the memo is full (or empty) 
+		KeywordAggregator bounded = new KeywordAggregator(4, SearchEngine.KEYWORD_PROPERTIES, 2);
+		for(BioPAXElement bpe : model.getObjects())
+			assertEquals(aggregator.getKeywords(bpe), bounded.getKeywords(bpe));
+		assertTrue(bounded.size() <= 2);
+		aggregator.clear();
+		assertEquals(0, aggregator.size());
+		assertEquals(bounded.getKeywords(pathway), aggregator.getKeywords(pathway));
+	}
+
+	@Test
+	public final void testProcessSizes() throws IOException {
+		Model model = model();
+		//sizes of all the processes at once
+		Pathway pathway = model.getObjects(Pathway.class).iterator().next();
+		ProcessSizes sizes = ProcessSizes.build(model);
+		assertEquals(4, sizes.getSize(pathway).intValue());
+		assertSameAsFetcher(model, sizes);
+		
+		//pathways that contain each other, a control, and pathway steps
+		model = BioPAXLevel.L3.getDefaultFactory().createModel();
+		Pathway a = model.addNew(Pathway.class, "a");
+		Pathway b = model.addNew(Pathway.class, "b");
+		BiochemicalReaction c = model.addNew(BiochemicalReaction.class, "c");
+		Control d = model.addNew(Control.class, "d");
+		BiochemicalReaction e = model.addNew(BiochemicalReaction.class, "e");
+		BiochemicalReaction f = model.addNew(BiochemicalReaction.class, "f");
+		a.addPathwayComponent(b);
+		b.addPathwayComponent(a);
+		b.addPathwayComponent(c);
+		a.addPathwayComponent(d);
+		d.addControlled(c);
+		PathwayStep step1 = model.addNew(PathwayStep.class, "step1");
+		step1.addStepProcess(e);
+		PathwayStep step2 = model.addNew(PathwayStep.class, "step2");
+		step2.addStepProcess(f);
+		step1.addNextStep(step2); //not followed
+		a.addPathwayOrder(step1);
+		sizes = ProcessSizes.build(model);
+		assertEquals(4, sizes.getSize(a).intValue()); //b, c, d, e
+		assertEquals(4, sizes.getSize(b).intValue()); //a, c, d, e
+		assertEquals(0, sizes.getSize(c).intValue());
+		assertEquals(1, sizes.getSize(d).intValue());
+		assertEquals(0, sizes.getSize(f).intValue());
+		assertSameAsFetcher(model, sizes);
+	}
+	
+	// sizes are the same as the no. processes the Fetcher collects (except for the process itself) 
+	private static void assertSameAsFetcher(Model model, ProcessSizes sizes) {
+		Fetcher fetcher = new Fetcher(SimpleEditorMap.L3, Fetcher.nextStepFilter);
+		for(Process process : model.getObjects(Process.class)) {
+			Set<Process> processes = fetcher.fetch(process, Process.class);
+			processes.remove(process);
+			assertEquals(process.getUri(), processes.size(), sizes.getSize(process).intValue());
+		}
+	}
+
+	@Test
+	public final void testListingOrder() throws IOException {
+		Model model = model();
+		SearchEngine searchEngine = new SearchEngine(model, indexLocation + "_listing");
+		searchEngine.index();
+		searchEngine.setMaxHitsPerPage(10);
+		
+		//index order (default) - same as in a single pass over all the docs
+		List<String> uris = new ArrayList<String>(searchEngine.findAllUris("*", null, null, null));
+		assertEquals(23, uris.size());
+		List<SearchHit> hits = listAll(searchEngine);
+		assertEquals(uris.size(), hits.size());
+		for(int i = 0; i < hits.size(); i++)
+			assertEquals(uris.get(i), hits.get(i).getUri());
+		String indexOrderCursor = searchEngine.search("*", 0, null, null, null).getCursor();
+		
+		//by size (no. processes), largest first, then in the index order
+		searchEngine.setListingBySize(true);
+		hits = listAll(searchEngine);
+		assertEquals(uris.size(), hits.size());
+		Set<String> listed = new HashSet<String>();
+		for(int i = 0; i < hits.size(); i++) {
+			listed.add(hits.get(i).getUri());
+			if(i > 0)
+				assertTrue(size(hits.get(i-1)) >= size(hits.get(i)));
+		}
+		assertEquals(new HashSet<String>(uris), listed);
+		assertEquals("Pathway", hits.get(0).getBiopaxClass());
+		assertEquals(4, hits.get(0).getSize().intValue());
+		
+		//a cursor of the other listing order cannot be used
+		try {
+			searchEngine.searchAfter("*", indexOrderCursor, null, null, null);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {}
+	}
+
+	// the test model
+	private static Model model() throws IOException {
+		return new SimpleIOHandler().convertFromOWL(resourceLoader
+			.getResource("classpath:merge/pathwaydata1.owl").getInputStream());
+	}
+
+	// all the q="*" hits, page by page (using the search cursor)
+	private static List<SearchHit> listAll(SearchEngine searchEngine) {
+		List<SearchHit> hits = new ArrayList<SearchHit>();
+		SearchResponse response = searchEngine.search("*", 0, null, null, null);
+		while(!response.getSearchHit().isEmpty()) {
+			hits.addAll(response.getSearchHit());
+			response = searchEngine.searchAfter("*", response.getCursor(), null, null, null);
+		}
+		return hits;
+	}
+
+	private static int size(SearchHit hit) {
+		return (hit.getSize() != null) ? hit.getSize() : 0;
 	}
 
 }
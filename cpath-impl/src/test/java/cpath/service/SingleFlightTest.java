@@ -0,0 +1,143 @@
+package cpath.service;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cpath.service.jaxb.DataResponse;
+import cpath.service.jaxb.ServiceResponse;
+
+public class SingleFlightTest {
+
+	static final int N = 8; //concurrent identical requests
+
+	File dir;
+
+	@Before
+	public void setUp() {
+		dir = new File(getClass().getClassLoader().getResource("").getPath()
+				+ File.separator + "testSingleFlight");
+		CPathUtils.cleanupDirectory(dir);
+	}
+
+	@Test
+	public final void testSingleExecution() throws Exception {
+		final SingleFlight singleFlight = new SingleFlight();
+		final AtomicInteger executions = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Path[] original = new Path[1];
+
+		List<ServiceResponse> responses = run(singleFlight, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() throws Exception {
+				executions.incrementAndGet();
+				release.await();
+				original[0] = Files.createTempFile(dir.toPath(), "result", ".owl");
+				Files.write(original[0], "<rdf/>".getBytes());
+				DataResponse dr = new DataResponse();
+				dr.setFormat(OutputFormat.BIOPAX);
+				dr.setData(original[0]);
+				return dr;
+			}
+		}, release);
+
+		assertEquals(1, executions.get());
+		assertEquals(N - 1, singleFlight.getShared());
+
+		// each participant has got its own file, and the original one is gone
+		Set<Path> files = new HashSet<Path>();
+		for(ServiceResponse res : responses) {
+			assertTrue(res instanceof DataResponse);
+			assertEquals(OutputFormat.BIOPAX, ((DataResponse) res).getFormat());
+			Path data = (Path) ((DataResponse) res).getData();
+			assertEquals("<rdf/>", new String(Files.readAllBytes(data)));
+			files.add(data);
+		}
+		assertEquals(N, files.size());
+		assertFalse(files.contains(original[0]));
+		assertFalse(Files.exists(original[0]));
+		for(Path data : files)
+			Files.delete(data);
+		assertEquals(0, dir.list().length);
+
+		// next time, it runs again (a single request gets the original response)
+		ServiceResponse res = singleFlight.execute("key", new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() throws Exception {
+				executions.incrementAndGet();
+				return new DataResponse();
+			}
+		});
+		assertEquals(2, executions.get());
+		assertTrue(res instanceof DataResponse);
+		assertNull(((DataResponse) res).getData());
+	}
+
+	@Test
+	public final void testFailure() throws Exception {
+		final SingleFlight singleFlight = new SingleFlight();
+		final AtomicInteger executions = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		List<ServiceResponse> responses = run(singleFlight, new Callable<ServiceResponse>() {
+			@Override
+			public ServiceResponse call() throws Exception {
+				executions.incrementAndGet();
+				release.await();
+				throw new IOException("test failure");
+			}
+		}, release);
+
+		assertEquals(1, executions.get());
+		assertEquals(N - 1, singleFlight.getShared());
+		for(ServiceResponse res : responses) {
+			assertTrue(res instanceof ErrorResponse);
+			assertTrue(((ErrorResponse) res).isStatus(Status.INTERNAL_ERROR));
+			assertTrue(((ErrorResponse) res).getErrorDetails().contains("test failure"));
+		}
+	}
+
+	// runs N identical requests at once; the computation is let go when all have joined
+	private List<ServiceResponse> run(final SingleFlight singleFlight,
+			final Callable<ServiceResponse> callable, CountDownLatch release) throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(N);
+		List<Future<ServiceResponse>> futures = new ArrayList<Future<ServiceResponse>>();
+		for(int i = 0; i < N; i++) {
+			futures.add(executor.submit(new Callable<ServiceResponse>() {
+				@Override
+				public ServiceResponse call() throws Exception {
+					return singleFlight.execute("key", callable);
+				}
+			}));
+		}
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while(singleFlight.getShared() < N - 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		release.countDown();
+
+		List<ServiceResponse> responses = new ArrayList<ServiceResponse>();
+		for(Future<ServiceResponse> f : futures)
+			responses.add(f.get(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		return responses;
+	}
+}
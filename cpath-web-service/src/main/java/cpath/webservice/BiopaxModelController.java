@@ -276,10 +276,12 @@ public class BiopaxModelController extends BasicController {
 					request, response, events);
 			return null;
 		} else {
-			// get results from the service
-			ServiceResponse results = service.search(
-					args.getQ(), args.getPage(), args.getType(),
-					args.getDatasource(), args.getOrganism());
+			// get results from the service (the next page after the cursor, if provided)
+			ServiceResponse results = (args.getCursor() != null && !args.getCursor().isEmpty())
+				? service.searchAfter(args.getQ(), args.getCursor(), args.getType(),
+					args.getDatasource(), args.getOrganism(), args.isFacets())
+				: service.search(args.getQ(), args.getPage(), args.getType(),
+					args.getDatasource(), args.getOrganism(), args.isFacets());
 
 			if(results instanceof ErrorResponse) {
 				errorResponse(((ErrorResponse) results).getStatus(), results.toString(), request, response, events);
@@ -297,5 +299,60 @@ public class BiopaxModelController extends BasicController {
 			return null;
 		}
 	}
+
+
+    @RequestMapping(value="/suggest")
+    public @ResponseBody SuggestResponse suggest(@RequestParam String q,
+    		@RequestParam(required=false, defaultValue="10") int max,
+    		HttpServletRequest request, HttpServletResponse response)
+    {
+    	Set<LogEvent> events = new HashSet<LogEvent>();
+    	events.add(LogEvent.command(Cmd.SUGGEST));
+    	
+    	if(max < 1 || max > 100) {
+    		errorResponse(Status.BAD_REQUEST, "max must be in 1..100", request, response, events);
+    		return null;
+    	}
+    	
+    	ServiceResponse results = service.suggest(q, max);
+    	if(results instanceof ErrorResponse) {
+    		errorResponse(((ErrorResponse) results).getStatus(), results.toString(), request, response, events);
+    		return null;
+    	}
+    	
+    	//zero suggestions is a valid result here (not an error);
+    	//not logged to the db (a request per keystroke)
+    	return (SuggestResponse) results;
+    }
+
+
+    @RequestMapping(value="/count")
+    public @ResponseBody SearchResponse count(@Valid Search args, BindingResult bindingResult,
+											   HttpServletRequest request, HttpServletResponse response)
+    {		
+    	Set<LogEvent> events = new HashSet<LogEvent>();
+    	events.add(LogEvent.command(Cmd.COUNT));
+		if(args.getUser()!=null && !args.getUser().isEmpty())
+			events.add(LogEvent.client(args.getUser()));
+    	   	
+    	if(bindingResult.hasErrors()) {
+			errorResponse(Status.BAD_REQUEST, 
+				errorFromBindingResult(bindingResult), 
+					request, response, events);
+			return null;
+		} else {
+			ServiceResponse results = service.count(args.getQ(), args.getType(),
+					args.getDatasource(), args.getOrganism());
+
+			if(results instanceof ErrorResponse) {
+				errorResponse(((ErrorResponse) results).getStatus(), results.toString(), request, response, events);
+				return null;
+			} 
+			
+			//zero is a valid result here (not an error); no providers to log
+			service.log(events, clientIpAddress(request));
+			return (SearchResponse) results;
+		}
+	}
     
 }
\ No newline at end of file
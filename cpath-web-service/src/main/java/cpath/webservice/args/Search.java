@@ -13,6 +13,8 @@ public class Search extends Base {
 	private String[] datasource;
 	@Min(0)
 	private Integer page;
+	private String cursor;
+	private boolean facets;
 
 	public Search() {
 		page = 0;
@@ -58,5 +60,21 @@ public class Search extends Base {
 	public void setPage(Integer page) {
 		this.page = page;
 	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public boolean isFacets() {
+		return facets;
+	}
+
+	public void setFacets(boolean facets) {
+		this.facets = facets;
+	}
 		
 }